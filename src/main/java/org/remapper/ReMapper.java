@@ -1,7 +1,6 @@
 package org.remapper;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jgit.lib.Repository;
 import org.remapper.dto.EntityMatchingJSON;
 import org.remapper.dto.MatchPair;
@@ -10,14 +9,20 @@ import org.remapper.service.EntityMatcherService;
 import org.remapper.service.EntityMatcherServiceImpl;
 import org.remapper.service.GitService;
 import org.remapper.util.GitServiceImpl;
+import org.remapper.util.JSONResultWriter;
+import org.remapper.util.MinHashIndex;
+import org.remapper.util.ParserEnvironment;
+import org.remapper.util.SymbolTable;
 
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class ReMapper {
 
@@ -35,92 +40,258 @@ public class ReMapper {
             return;
         }
 
-        if (option.equalsIgnoreCase("-c")) {
+        if (option.equalsIgnoreCase("-a")) {
+            detectAll(args);
+        } else if (option.equalsIgnoreCase("-bc")) {
+            detectBetweenCommits(args);
+        } else if (option.equalsIgnoreCase("-c")) {
             detectAtCommit(args);
         } else {
             throw argumentException();
         }
     }
 
-    private static void processJSONOption(String[] args) {
-        if (args[args.length - 2].equalsIgnoreCase("-json")) {
-            path = Paths.get(args[args.length - 1]);
-            if (Files.exists(path) && path.toFile().length() == 0) {
-                try {
-                    Files.delete(path);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+    /**
+     * Flags accepted after the positional arguments, with the number of values each takes.
+     */
+    private static final Map<String, Integer> OPTIONS = new LinkedHashMap<>();
+
+    static {
+        OPTIONS.put("-json", 1);
+        OPTIONS.put("-threads", 1);
+        OPTIONS.put("-names", 0);
+        OPTIONS.put("-lsh", 0);
+        OPTIONS.put("-java-renames", 0);
+        OPTIONS.put("-include", 1);
+        OPTIONS.put("-exclude", 1);
+        OPTIONS.put("-java", 1);
+    }
+
+    /**
+     * Reads the flags following the positional arguments of a mode, with their values. The positional arguments
+     * come first and must not be flags, every flag is given at most once and "-json" is required.
+     *
+     * @param positionals the number of arguments after the mode
+     * @param threads     whether "-threads" is accepted
+     */
+    private static Map<String, String> parseOptions(String[] args, int positionals, boolean threads) {
+        if (args.length < 1 + positionals)
+            throw argumentException();
+        for (int i = 1; i <= positionals; i++) {
+            if (OPTIONS.containsKey(args[i].toLowerCase()))
+                throw argumentException();
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1 + positionals; i < args.length; i++) {
+            String option = args[i].toLowerCase();
+            Integer arity = OPTIONS.get(option);
+            if (arity == null || options.containsKey(option) || (!threads && option.equals("-threads")))
+                throw argumentException();
+            String value = null;
+            if (arity == 1) {
+                if (i + 1 == args.length || OPTIONS.containsKey(args[i + 1].toLowerCase()))
+                    throw argumentException();
+                value = args[++i];
             }
+            options.put(option, value);
         }
+        if (!options.containsKey("-json"))
+            throw argumentException();
+        processJSONOption(options.get("-json"));
+        return options;
     }
 
-    public static void detectAtCommit(String[] args) throws Exception {
-        processJSONOption(args);
-        if (args.length != 5) {
+    private static void processJSONOption(String file) {
+        path = Paths.get(file);
+        if (Files.exists(path) && path.toFile().length() == 0) {
+            try {
+                Files.delete(path);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of worker threads given by "-threads n", 1 by default
+     */
+    private static int processThreadsOption(Map<String, String> options) {
+        if (!options.containsKey("-threads"))
+            return 1;
+        int threads;
+        try {
+            threads = Integer.parseInt(options.get("-threads"));
+        } catch (NumberFormatException e) {
             throw argumentException();
         }
+        if (threads < 1)
+            throw argumentException();
+        return threads;
+    }
+
+    private static GitService createGitService(Map<String, String> options) {
+        GitServiceImpl gitService = new GitServiceImpl();
+        gitService.setJavaRenameDetection(options.containsKey("-java-renames"));
+        gitService.setIncludePatterns(getPatterns(options, "-include"));
+        gitService.setExcludePatterns(getPatterns(options, "-exclude"));
+        return gitService;
+    }
+
+    /**
+     * @return the comma-separated globs of "-include" or "-exclude"
+     */
+    private static List<String> getPatterns(Map<String, String> options, String option) {
+        List<String> patterns = new ArrayList<>();
+        if (options.containsKey(option)) {
+            for (String pattern : options.get(option).split(",")) {
+                if (!pattern.trim().isEmpty())
+                    patterns.add(pattern.trim());
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * Parses the sources of the repository at the Java version given by "-java", such as 1.8 or 17.
+     */
+    private static void processJavaOption(Map<String, String> options, Repository repository) {
+        if (!options.containsKey("-java"))
+            return;
+        String javaVersion = options.get("-java");
+        if (javaVersion.matches("[5-8]"))
+            javaVersion = "1." + javaVersion;
+        if (!JavaCore.isSupportedJavaVersion(javaVersion))
+            throw argumentException();
+        ParserEnvironment.setEnvironment(repository, new ParserEnvironment(javaVersion));
+    }
+
+    private static void processMatchingOptions(Map<String, String> options) {
+        SymbolTable.setEnabled(options.containsKey("-names"));
+        MinHashIndex.setEnabled(options.containsKey("-lsh"));
+    }
+
+    public static void detectAll(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args, 1, true);
+        int threads = processThreadsOption(options);
+        processMatchingOptions(options);
 
         String folder = args[1];
-        String commitId = args[2];
-        GitService gitService = new GitServiceImpl();
+        GitService gitService = createGitService(options);
         try (Repository repo = gitService.openRepository(folder)) {
+            processJavaOption(options, repo);
             String gitURL = GitServiceImpl.getRemoteUrl(folder);
-            EntityMatcherService service = new EntityMatcherServiceImpl();
-            service.matchAtCommit(repo, commitId, new MatchingHandler() {
-                @Override
-                public void handle(String commitId, MatchPair matchPair) {
-                    commitJSON(gitURL, commitId, matchPair);
-                }
+            EntityMatcherService service = new EntityMatcherServiceImpl(gitService);
+            try (JSONResultWriter writer = new JSONResultWriter(path)) {
+                long start = System.currentTimeMillis();
+                int commits = service.matchAll(repo, streamingHandler(gitURL, writer), threads);
+                reportThroughput(commits, start);
+                reportCandidateRetrieval();
+            }
+        }
+    }
+
+    public static void detectBetweenCommits(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args, 3, true);
+        int threads = processThreadsOption(options);
+        processMatchingOptions(options);
 
-                @Override
-                public void handleException(String commit, Exception e) {
+        String folder = args[1];
+        String startCommitId = args[2];
+        String endCommitId = args[3];
+        GitService gitService = createGitService(options);
+        try (Repository repo = gitService.openRepository(folder)) {
+            processJavaOption(options, repo);
+            String gitURL = GitServiceImpl.getRemoteUrl(folder);
+            EntityMatcherService service = new EntityMatcherServiceImpl(gitService);
+            try (JSONResultWriter writer = new JSONResultWriter(path)) {
+                long start = System.currentTimeMillis();
+                int commits = service.matchBetweenCommits(repo, startCommitId, endCommitId, streamingHandler(gitURL, writer), threads);
+                reportThroughput(commits, start);
+                reportCandidateRetrieval();
+            }
+        }
+    }
+
+    /**
+     * Appends the result of each commit to the JSON file as soon as it is handed over, in the order of the log.
+     */
+    private static MatchingHandler streamingHandler(String cloneURL, JSONResultWriter writer) {
+        return new MatchingHandler() {
+            @Override
+            public void handle(String commitId, MatchPair matchPair) {
+                commitJSON(writer, cloneURL, commitId, matchPair);
+            }
+
+            @Override
+            public void handleException(String commit, Exception e) {
+                synchronized (System.err) {
                     System.err.println("Error processing commit " + commit);
                     e.printStackTrace(System.err);
                 }
-            });
+            }
+        };
+    }
+
+    private static void reportThroughput(int commits, long start) {
+        double seconds = Math.max(System.currentTimeMillis() - start, 1) / 1000.0;
+        System.out.printf("Matched %d commits in %.1f s (%.2f commits/s)%n", commits, seconds, commits / seconds);
+    }
+
+    private static void reportCandidateRetrieval() {
+        if (!MinHashIndex.isEnabled())
+            return;
+        long pairs = MinHashIndex.getPairs();
+        System.out.printf("Scored %d of %d entity pairs by Dice (%.1f%%), %d reached the minimum%n", MinHashIndex.getRetrievedPairs(),
+                pairs, pairs == 0 ? 0 : 100.0 * MinHashIndex.getRetrievedPairs() / pairs, MinHashIndex.getFoundPairs());
+    }
+
+    public static void detectAtCommit(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args, 2, false);
+        processMatchingOptions(options);
+
+        String folder = args[1];
+        String commitId = args[2];
+        GitService gitService = createGitService(options);
+        try (Repository repo = gitService.openRepository(folder)) {
+            processJavaOption(options, repo);
+            String gitURL = GitServiceImpl.getRemoteUrl(folder);
+            EntityMatcherService service = new EntityMatcherServiceImpl(gitService);
+            try (JSONResultWriter writer = new JSONResultWriter(path)) {
+                service.matchAtCommit(repo, commitId, new MatchingHandler() {
+                    @Override
+                    public void handle(String commitId, MatchPair matchPair) {
+                        commitJSON(writer, gitURL, commitId, matchPair);
+                    }
+
+                    @Override
+                    public void handleException(String commit, Exception e) {
+                        System.err.println("Error processing commit " + commit);
+                        e.printStackTrace(System.err);
+                    }
+                });
+            }
         }
     }
 
-    private static void commitJSON(String cloneURL, String currentCommitId, MatchPair matchPair) {
-        Gson gson = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
+    private static void commitJSON(JSONResultWriter writer, String cloneURL, String currentCommitId, MatchPair matchPair) {
         String url = cloneURL.replace(".git", "/commit/") + currentCommitId;
-        if (Files.notExists(path)) {
-            Path parent = path.getParent();
-            try {
-                if (Files.notExists(parent)) {
-                    Files.createDirectories(parent);
-                }
-                Files.createFile(path);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            try (BufferedWriter out = new BufferedWriter(new FileWriter(path.toFile()))) {
-                EntityMatchingJSON results = new EntityMatchingJSON();
-                results.populateJSON(cloneURL, currentCommitId, url, matchPair);
-                String jsonString = gson.toJson(results, EntityMatchingJSON.class).replace("\\t", "\t");
-                out.write(jsonString);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        } else {
-            try (FileReader reader = new FileReader(path.toFile())) {
-                EntityMatchingJSON results = gson.fromJson(reader, EntityMatchingJSON.class);
-                results.populateJSON(cloneURL, currentCommitId, url, matchPair);
-                String jsonString = gson.toJson(results, EntityMatchingJSON.class).replace("\\t", "\t");
-                BufferedWriter out = new BufferedWriter(new FileWriter(path.toFile()));
-                out.write(jsonString);
-                out.close();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+        EntityMatchingJSON results = new EntityMatchingJSON();
+        results.populateJSON(cloneURL, currentCommitId, url, matchPair);
+        try {
+            writer.write(results);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
     }
 
     private static void printTips() {
         System.out.println("-h\t\t\t\t\t\t\t\t\t\t\tShow options");
         System.out.println(
-                "-c <git-repo-folder> <commit-sha1> -json <path-to-json-file>\t\t\t\tMatch entities at specified commit <commit-sha1> for project <git-repo-folder>");
+                "-c <git-repo-folder> <commit-sha1> [-names] [-lsh] [-java-renames] [-include <globs>] [-exclude <globs>] [-java <version>] -json <path-to-json-file>\t\t\t\tMatch entities at specified commit <commit-sha1> for project <git-repo-folder>");
+        System.out.println(
+                "-a <git-repo-folder> [-threads <n>] [-names] [-lsh] [-java-renames] [-include <globs>] [-exclude <globs>] [-java <version>] -json <path-to-json-file>\t\t\t\tMatch entities at all commits for project <git-repo-folder>");
+        System.out.println(
+                "-bc <git-repo-folder> <start-commit-sha1> <end-commit-sha1> [-threads <n>] [-names] [-lsh] [-java-renames] [-include <globs>] [-exclude <globs>] [-java <version>] -json <path-to-json-file>\tMatch entities at the commits between <start-commit-sha1> and <end-commit-sha1> for project <git-repo-folder>");
     }
 
     private static IllegalArgumentException argumentException() {
@@ -0,0 +1,43 @@
+package org.remapper.dto;
+
+/**
+ * Java files changed by a commit, counted from its trees without opening any blob.
+ * Renames are only the files moved with identical contents.
+ */
+public class CommitTriage {
+
+    private final int addedFiles;
+    private final int deletedFiles;
+    private final int modifiedFiles;
+    private final int renamedFiles;
+
+    public CommitTriage(int addedFiles, int deletedFiles, int modifiedFiles, int renamedFiles) {
+        this.addedFiles = addedFiles;
+        this.deletedFiles = deletedFiles;
+        this.modifiedFiles = modifiedFiles;
+        this.renamedFiles = renamedFiles;
+    }
+
+    public int getAddedFiles() {
+        return addedFiles;
+    }
+
+    public int getDeletedFiles() {
+        return deletedFiles;
+    }
+
+    public int getModifiedFiles() {
+        return modifiedFiles;
+    }
+
+    public int getRenamedFiles() {
+        return renamedFiles;
+    }
+
+    /**
+     * same condition as GitService.containJavaChange, given the triage was taken with the same path patterns
+     */
+    public boolean containJavaChange() {
+        return modifiedFiles > 0 || renamedFiles > 0 || (addedFiles > 0 && deletedFiles > 0);
+    }
+}
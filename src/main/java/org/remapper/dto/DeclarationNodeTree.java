@@ -2,6 +2,7 @@ package org.remapper.dto;
 
 import org.eclipse.jdt.core.dom.*;
 import org.remapper.util.StringUtils;
+import org.remapper.util.StructuralHash;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -26,6 +27,8 @@ public abstract class DeclarationNodeTree {
     private MethodNode methodNode;
     private LocationInfo location;
     private List<EntityInfo> dependencies;
+    private long declarationHash;
+    private boolean hasDeclarationHash;
 
     public DeclarationNodeTree() {
     }
@@ -187,27 +190,42 @@ public abstract class DeclarationNodeTree {
     }
 
     public boolean equals(DeclarationNodeTree other, String filePath, String renamedFilePath) {
+        return getNameKey().equals(getRenamedNameKey(filePath, getFilePackage(filePath, this.namespace),
+                renamedFilePath, getFilePackage(renamedFilePath, other.namespace)));
+    }
+
+    /**
+     * @return the type, namespace and name, which {@link #equals(DeclarationNodeTree)} compares
+     */
+    public List<Object> getNameKey() {
+        return Arrays.asList(type, namespace, name);
+    }
+
+    /**
+     * @return the name key as if the node was declared in the renamed file, the packages being those given by
+     * {@link #getFilePackage(String, String)} for the file of each side
+     */
+    public List<Object> getRenamedNameKey(String filePath, String filePackage, String renamedFilePath, String renamedFilePackage) {
         String originalName = filePath.substring(filePath.lastIndexOf("/") + 1, filePath.lastIndexOf(".java"));
-        String originalPackage = filePath.substring(0, filePath.lastIndexOf("/")).replace("/", ".");
-        while (originalPackage.contains(".")) {
-            if (this.namespace.startsWith(originalPackage))
-                break;
-            else {
-                originalPackage = originalPackage.substring(originalPackage.indexOf(".") + 1);
-            }
-        }
         String renamedName = renamedFilePath.substring(renamedFilePath.lastIndexOf("/") + 1, renamedFilePath.lastIndexOf(".java"));
-        String renamedPackage = renamedFilePath.substring(0, renamedFilePath.lastIndexOf("/")).replace("/", ".");
-        while (renamedPackage.contains(".")) {
-            if (other.namespace.startsWith(renamedPackage))
+        return Arrays.asList(type, namespace.replace(filePackage, renamedFilePackage).replace(originalName, renamedName),
+                name.replace(originalName, renamedName));
+    }
+
+    /**
+     * @return the directories of the file as a package, without as many leading ones as needed for the namespace
+     * to start with it, but at least the last one
+     */
+    public static String getFilePackage(String filePath, String namespace) {
+        String filePackage = filePath.substring(0, filePath.lastIndexOf("/")).replace("/", ".");
+        while (filePackage.contains(".")) {
+            if (namespace.startsWith(filePackage))
                 break;
             else {
-                renamedPackage = renamedPackage.substring(renamedPackage.indexOf(".") + 1);
+                filePackage = filePackage.substring(filePackage.indexOf(".") + 1);
             }
         }
-        return this.type == other.type &&
-                StringUtils.equals(this.namespace.replace(originalPackage, renamedPackage).replace(originalName, renamedName), other.namespace) &&
-                StringUtils.equals(this.name.replace(originalName, renamedName), other.name);
+        return filePackage;
     }
 
     public MethodNode getMethodNode() {
@@ -221,4 +239,54 @@ public abstract class DeclarationNodeTree {
     public LocationInfo getLocation() {
         return location;
     }
+
+    /**
+     * @return the {@link StructuralHash} of the declaration, computed on first use unless it was set when the tree
+     * was built
+     */
+    public long getDeclarationHash() {
+        if (!hasDeclarationHash)
+            setDeclarationHash(StructuralHash.hash(declaration));
+        return declarationHash;
+    }
+
+    public void setDeclarationHash(long declarationHash) {
+        this.declarationHash = declarationHash;
+        this.hasDeclarationHash = true;
+    }
+
+    /**
+     * Same as comparing the stripped text of the declarations. Declarations with differing hashes are told apart
+     * without flattening them, and the text is only compared to rule out a collision of equal hashes.
+     */
+    public boolean hasSameDeclaration(DeclarationNodeTree other) {
+        if (getDeclarationHash() != other.getDeclarationHash())
+            return false;
+        return declaration.toString().strip().equals(other.declaration.toString().strip());
+    }
+
+    /**
+     * @return a deep copy of this node and its descendants, sharing the AST and the locations
+     */
+    public abstract DeclarationNodeTree copy(DeclarationNodeTree parent);
+
+    protected void copyTo(DeclarationNodeTree copy, DeclarationNodeTree parent) {
+        copy.height = height;
+        copy.type = type;
+        copy.namespace = namespace;
+        copy.name = name;
+        copy.parent = parent;
+        copy.declaration = declaration;
+        copy.isRoot = isRoot;
+        copy.isLeaf = isLeaf;
+        copy.isMatched = isMatched;
+        copy.filePath = filePath;
+        copy.location = location;
+        copy.declarationHash = declarationHash;
+        copy.hasDeclarationHash = hasDeclarationHash;
+        copy.dependencies = new ArrayList<>(dependencies);
+        copy.children = new ArrayList<>(children.size());
+        for (DeclarationNodeTree child : children)
+            copy.children.add(child.copy(copy));
+    }
 }
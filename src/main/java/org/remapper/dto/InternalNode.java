@@ -10,6 +10,9 @@ public class InternalNode extends DeclarationNodeTree {
 
     private List<DeclarationNodeTree> descendants;
 
+    private InternalNode() {
+    }
+
     public InternalNode(CompilationUnit cu, String filePath, ASTNode node) {
         super(cu, filePath, node);
         super.setRoot(false);
@@ -28,4 +31,11 @@ public class InternalNode extends DeclarationNodeTree {
         }
         return descendants;
     }
+
+    @Override
+    public DeclarationNodeTree copy(DeclarationNodeTree parent) {
+        InternalNode copy = new InternalNode();
+        copyTo(copy, parent);
+        return copy;
+    }
 }
@@ -11,7 +11,14 @@ import java.util.List;
 
 public class LeafNode extends DeclarationNodeTree {
 
-    private List<ChildNode> descendants;
+    /**
+     * Volatile, as pairs are scored in parallel and a list built by one thread may be read by another.
+     */
+    private volatile List<ChildNode> descendants;
+    private volatile List<ChildNode> descendantsInBody;
+
+    private LeafNode() {
+    }
 
     public LeafNode(CompilationUnit cu, String filePath, ASTNode node) {
         super(cu, filePath, node);
@@ -27,9 +34,22 @@ public class LeafNode extends DeclarationNodeTree {
         return descendants;
     }
 
+    /**
+     * Built on first use, since only the bodies compared for extraction and inlining are needed.
+     */
     public List<ChildNode> getDescendantsInBody(JDTService jdtService) {
-        MethodDeclaration declaration = (MethodDeclaration) getDeclaration();
-        Block body = declaration.getBody();
-        return body == null ? new ArrayList<>() : jdtService.getDescendants(body);
+        if (descendantsInBody == null) {
+            MethodDeclaration declaration = (MethodDeclaration) getDeclaration();
+            Block body = declaration.getBody();
+            descendantsInBody = body == null ? new ArrayList<>() : jdtService.getDescendants(body);
+        }
+        return descendantsInBody;
+    }
+
+    @Override
+    public DeclarationNodeTree copy(DeclarationNodeTree parent) {
+        LeafNode copy = new LeafNode();
+        copyTo(copy, parent);
+        return copy;
     }
 }
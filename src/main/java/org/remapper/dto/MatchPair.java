@@ -2,8 +2,10 @@ package org.remapper.dto;
 
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -28,6 +30,11 @@ public class MatchPair {
     private Set<StatementNodeTree> deletedStatements;
     private Set<StatementNodeTree> addedStatements;
 
+    /**
+     * Renamed Files
+     */
+    private Map<String, RenameStrategy> renameStrategies;
+
     public MatchPair() {
         unchangedEntities = new LinkedHashSet<>();
         matchedEntities = new LinkedHashSet<>();
@@ -41,6 +48,8 @@ public class MatchPair {
         candidateStatements = new LinkedHashSet<>();
         deletedStatements = new LinkedHashSet<>();
         addedStatements = new LinkedHashSet<>();
+
+        renameStrategies = new LinkedHashMap<>();
     }
 
     /**
@@ -214,4 +223,11 @@ public class MatchPair {
     public void addAddedStatement(StatementNodeTree addedStatement) {
         this.addedStatements.add(addedStatement);
     }
+
+    /**
+     * @return the strategy that paired each renamed Java file, keyed by its path in the current commit
+     */
+    public Map<String, RenameStrategy> getRenameStrategies() {
+        return renameStrategies;
+    }
 }
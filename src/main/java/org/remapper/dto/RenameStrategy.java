@@ -0,0 +1,19 @@
+package org.remapper.dto;
+
+public enum RenameStrategy {
+
+    BLOB_IDENTITY("Blob Identity"),
+    TYPE_NAME("Type Name"),
+    PACKAGE_SUFFIX("Package Suffix"),
+    CONTENT_SIMILARITY("Content Similarity");
+
+    private final String name;
+
+    RenameStrategy(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
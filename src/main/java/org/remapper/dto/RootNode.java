@@ -11,6 +11,9 @@ public class RootNode extends DeclarationNodeTree {
 
     private List<DeclarationNodeTree> allNodes;
 
+    private RootNode() {
+    }
+
     public RootNode(CompilationUnit cu, String filePath, ASTNode node) {
         super(cu, filePath, node);
         super.setHeight(0);
@@ -52,4 +55,11 @@ public class RootNode extends DeclarationNodeTree {
             list.add(child);
         }
     }
+
+    @Override
+    public RootNode copy(DeclarationNodeTree parent) {
+        RootNode copy = new RootNode();
+        copyTo(copy, parent);
+        return copy;
+    }
 }
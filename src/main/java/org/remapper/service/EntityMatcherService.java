@@ -27,4 +27,27 @@ public interface EntityMatcherService {
     void matchAtCommit(Repository repository, String commitId, MatchingHandler handler, int timeout);
 
     MatchPair matchEntities(Repository repository, RevCommit currentCommit, final MatchingHandler handler) throws Exception;
+
+    /**
+     * Match entities in all non-merge commits that change Java files.
+     *
+     * @param repository A git repository (from JGit library).
+     * @param handler    A handler object that is responsible to process the matched entities. It is called for one commit at a time, in the order of the log.
+     * @param threads    The number of commits matched in parallel.
+     * @return The number of matched commits.
+     */
+    int matchAll(Repository repository, MatchingHandler handler, int threads) throws Exception;
+
+    /**
+     * Match entities in the non-merge commits that change Java files, reachable from endCommitId but not from startCommitId.
+     *
+     * @param repository    A git repository (from JGit library).
+     * @param startCommitId The SHA key that identifies the oldest commit, which is excluded.
+     * @param endCommitId   The SHA key that identifies the newest commit.
+     * @param handler       A handler object that is responsible to process the matched entities. It is called for one commit at a time, in the order of the log.
+     * @param threads       The number of commits matched in parallel.
+     * @return The number of matched commits.
+     */
+    int matchBetweenCommits(Repository repository, String startCommitId, String endCommitId, MatchingHandler handler,
+                            int threads) throws Exception;
 }
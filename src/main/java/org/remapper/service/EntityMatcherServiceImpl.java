@@ -8,28 +8,50 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.remapper.dto.*;
 import org.remapper.handler.MatchingHandler;
+import org.remapper.util.CommitTriageIndex;
 import org.remapper.util.DiceFunction;
 import org.remapper.util.GitServiceImpl;
 import org.remapper.util.JDTServiceImpl;
 import org.remapper.util.MethodUtils;
+import org.remapper.util.ParserEnvironment;
+import org.remapper.util.SymbolTable;
+import org.remapper.util.WorktreePool;
+import org.remapper.visitor.NameUsageVisitor;
 import org.remapper.visitor.NodeUsageVisitor;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.IOException;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class EntityMatcherServiceImpl implements EntityMatcherService {
 
+    private final GitService gitService;
+
+    public EntityMatcherServiceImpl() {
+        this(new GitServiceImpl());
+    }
+
+    public EntityMatcherServiceImpl(GitService gitService) {
+        this.gitService = gitService;
+    }
+
     @Override
     public void matchAtCommit(Repository repository, String commitId, MatchingHandler handler) {
+        matchCommit(repository, commitId, handler);
+    }
+
+    /**
+     * @return whether the commit was matched and handed to the handler, false if it has no parent or failed
+     */
+    private boolean matchCommit(Repository repository, String commitId, MatchingHandler handler) {
         RevWalk walk = new RevWalk(repository);
         try {
             RevCommit commit = walk.parseCommit(repository.resolve(commitId));
             if (commit.getParentCount() > 0) {
                 walk.parseCommit(commit.getParent(0));
                 this.matchEntities(repository, commit, handler);
+                return true;
             }
         } catch (MissingObjectException ignored) {
         } catch (Exception e) {
@@ -38,6 +60,7 @@ public class EntityMatcherServiceImpl implements EntityMatcherService {
             walk.close();
             walk.dispose();
         }
+        return false;
     }
 
     @Override
@@ -57,9 +80,96 @@ public class EntityMatcherServiceImpl implements EntityMatcherService {
         }
     }
 
+    @Override
+    public int matchAll(Repository repository, MatchingHandler handler, int threads) throws Exception {
+        Iterable<RevCommit> commits = gitService.getAllCommits(repository.getDirectory().getPath());
+        return matchCommits(repository, commits, handler, threads);
+    }
+
+    @Override
+    public int matchBetweenCommits(Repository repository, String startCommitId, String endCommitId, MatchingHandler handler,
+                                   int threads) throws Exception {
+        Iterable<RevCommit> commits = gitService.getCommitsBetween(repository, startCommitId, endCommitId);
+        return matchCommits(repository, commits, handler, threads);
+    }
+
+    /**
+     * Commits are handed to a fixed pool of workers through a bounded queue. When the queue is full, the caller
+     * matches the next commit itself, so only a single thread keeps the order of the commits. The calls to the
+     * handler are still made in the order of the commits, one at a time, see {@link OrderedHandler}.
+     *
+     * @return the number of commits matched without failure
+     */
+    private int matchCommits(Repository repository, Iterable<RevCommit> commits, MatchingHandler handler, int threads)
+            throws IOException, InterruptedException {
+        CommitTriageIndex index = CommitTriageIndex.open(repository, gitService.getPathPatternKey());
+        try {
+            if (threads == 1) {
+                int count = 0;
+                for (RevCommit commit : commits) {
+                    if (isScheduled(repository, index, commit) && matchCommit(repository, commit.getId().getName(), handler))
+                        count++;
+                }
+                return count;
+            }
+            WorktreePool pool = WorktreePool.getSharedPool(repository);
+            pool.setMaxWorktrees(Math.max(pool.getMaxWorktrees(), threads));
+            ThreadPoolExecutor service = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+            AtomicReference<RuntimeException> failure = new AtomicReference<>();
+            OrderedHandler orderedHandler = new OrderedHandler(handler);
+            try {
+                long sequence = 0;
+                for (RevCommit commit : commits) {
+                    if (failure.get() != null)
+                        break;
+                    if (!isScheduled(repository, index, commit))
+                        continue;
+                    String commitId = commit.getId().getName();
+                    long commitSequence = sequence++;
+                    service.execute(() -> {
+                        BufferingHandler buffer = new BufferingHandler();
+                        try {
+                            matchCommit(repository, commitId, buffer);
+                        } finally {
+                            try {
+                                orderedHandler.deliver(commitSequence, buffer);
+                            } catch (RuntimeException e) {
+                                failure.compareAndSet(null, e);
+                            }
+                        }
+                    });
+                }
+            } finally {
+                service.shutdown();
+                service.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            if (failure.get() != null)
+                throw failure.get();
+            return orderedHandler.getHandled();
+        } finally {
+            index.save();
+        }
+    }
+
+    /**
+     * Drops the commits without Java changes, as recorded in the repository's {@link CommitTriageIndex}. Commits are
+     * triaged as they are read from the log and keep its order, so that each commit can reuse the sources,
+     * worktrees and trees left by its parent.
+     */
+    private boolean isScheduled(Repository repository, CommitTriageIndex index, RevCommit commit) throws IOException {
+        if (commit.getParentCount() == 0)
+            return false;
+        CommitTriage triage = index.get(commit);
+        if (triage == null) {
+            triage = gitService.triageCommit(repository, commit);
+            index.put(commit, triage);
+        }
+        return triage.containJavaChange();
+    }
+
     public MatchPair matchEntities(Repository repository, RevCommit currentCommit, final MatchingHandler handler) throws Exception {
-        GitService gitService = new GitServiceImpl();
-        JDTService jdtService = new JDTServiceImpl();
+        JDTService jdtService = new JDTServiceImpl(ParserEnvironment.getEnvironment(repository));
         SoftwareEntityMatcherService emService = new SoftwareEntityMatcherService();
         MethodStatementMatcherService smService = new MethodStatementMatcherService();
         String commitId = currentCommit.getId().getName();
@@ -98,9 +208,7 @@ public class EntityMatcherServiceImpl implements EntityMatcherService {
                         List<StatementNodeTree> allOperations = newMethod.getAllOperations();
                         List<StatementNodeTree> locations = new ArrayList<>();
                         for (StatementNodeTree snt : allOperations) {
-                            NodeUsageVisitor visitor = new NodeUsageVisitor();
-                            snt.getStatement().accept(visitor);
-                            for (EntityInfo entity : visitor.getEntityUsages()) {
+                            for (EntityInfo entity : getEntityUsages(emService.getSymbolTableCurrent(), newEntity, snt)) {
                                 if (entity.equals(addedEntity.getEntity())) {
                                     locations.add(snt);
                                     break;
@@ -176,9 +284,7 @@ public class EntityMatcherServiceImpl implements EntityMatcherService {
                         List<StatementNodeTree> allOperations = oldMethod.getAllOperations();
                         List<StatementNodeTree> locations = new ArrayList<>();
                         for (StatementNodeTree snt : allOperations) {
-                            NodeUsageVisitor visitor = new NodeUsageVisitor();
-                            snt.getStatement().accept(visitor);
-                            for (EntityInfo entity : visitor.getEntityUsages()) {
+                            for (EntityInfo entity : getEntityUsages(emService.getSymbolTableBefore(), oldEntity, snt)) {
                                 if (entity.equals(deletedEntity.getEntity())) {
                                     locations.add(snt);
                                     break;
@@ -269,4 +375,91 @@ public class EntityMatcherServiceImpl implements EntityMatcherService {
         handler.handle(commitId, matchPair);
         return matchPair;
     }
+
+    /**
+     * Keeps the outcome of matching one commit, to be replayed on the actual handler.
+     */
+    private static class BufferingHandler extends MatchingHandler {
+
+        private String commitId;
+        private MatchPair matchPair;
+        private Exception exception;
+
+        @Override
+        public void handle(String commitId, MatchPair matchPair) {
+            this.commitId = commitId;
+            this.matchPair = matchPair;
+        }
+
+        @Override
+        public void handleException(String commitId, Exception e) {
+            this.commitId = commitId;
+            this.exception = e;
+        }
+
+        /**
+         * A failure of the handler to handle the matched entities is passed to its handleException, as if it had
+         * been called directly.
+         *
+         * @return whether the matched entities were handled without failure
+         */
+        private boolean replay(MatchingHandler handler) {
+            if (exception != null) {
+                handler.handleException(commitId, exception);
+                return false;
+            }
+            if (matchPair == null)
+                return false;
+            try {
+                handler.handle(commitId, matchPair);
+                return true;
+            } catch (Exception e) {
+                handler.handleException(commitId, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Replays the outcomes of the commits on the handler in the order the commits were scheduled. A commit completed
+     * before an earlier one waits until the earlier one is delivered.
+     */
+    private static class OrderedHandler {
+
+        private final MatchingHandler handler;
+        private final Map<Long, BufferingHandler> pending = new HashMap<>();
+        private long next;
+        private int handled;
+
+        private OrderedHandler(MatchingHandler handler) {
+            this.handler = handler;
+        }
+
+        private synchronized void deliver(long sequence, BufferingHandler buffer) {
+            pending.put(sequence, buffer);
+            while (pending.containsKey(next)) {
+                if (pending.remove(next++).replay(handler))
+                    handled++;
+            }
+        }
+
+        private synchronized int getHandled() {
+            return handled;
+        }
+    }
+
+    /**
+     * @param symbolTable the symbol table of the side of the method in the name-based mode, null otherwise
+     */
+    private List<EntityInfo> getEntityUsages(SymbolTable symbolTable, DeclarationNodeTree method, StatementNodeTree snt) {
+        if (symbolTable == null) {
+            NodeUsageVisitor visitor = new NodeUsageVisitor();
+            snt.getStatement().accept(visitor);
+            return visitor.getEntityUsages();
+        }
+        NameUsageVisitor visitor = new NameUsageVisitor(symbolTable, SymbolTable.getCompilationUnit(method),
+                SymbolTable.getEnclosingTypes(method));
+        snt.getStatement().accept(visitor);
+        return visitor.getEntityUsages();
+    }
 }
@@ -2,9 +2,13 @@ package org.remapper.service;
 
 import org.eclipse.jgit.api.errors.CanceledException;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.remapper.dto.CommitTriage;
+import org.remapper.dto.RenameStrategy;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
@@ -14,6 +18,11 @@ public interface GitService {
     void fileTreeDiff(Repository repository, RevCommit currentCommit, Set<String> addedFiles, Set<String> deletedFiles,
                       Set<String> modifiedFiles, Map<String, String> renamedFiles) throws IOException, CanceledException;
 
+    void fileTreeDiff(Repository repository, RevCommit currentCommit, Set<String> addedFiles, Set<String> deletedFiles,
+                      Set<String> modifiedFiles, Map<String, String> renamedFiles, Map<String, ObjectId> objectIdsBefore,
+                      Map<String, ObjectId> objectIdsCurrent, Map<String, RenameStrategy> renameStrategies)
+            throws IOException, CanceledException;
+
     Repository openRepository(String folder) throws IOException;
 
     void closeRepository(Repository repository);
@@ -26,7 +35,24 @@ public interface GitService {
 
     void resetHard(Repository repository) throws GitAPIException;
 
+    /**
+     * @param paths source roots or files relative to the repository, "" for all of it
+     */
+    void updateJavaSources(Repository repository, ObjectId baseTree, RevCommit commit, Set<String> paths, File directory) throws IOException;
+
     Iterable<RevCommit> getAllCommits(String project) throws GitAPIException, IOException;
 
+    Iterable<RevCommit> getCommitsBetween(Repository repository, String startCommitId, String endCommitId) throws GitAPIException, IOException;
+
     boolean containJavaChange(Repository repository, RevCommit currentCommit) throws GitAPIException, IOException;
+
+    /**
+     * Counts the changed Java files accepted by the path patterns, the same files {@link #containJavaChange} looks at.
+     */
+    CommitTriage triageCommit(Repository repository, RevCommit currentCommit) throws IOException;
+
+    /**
+     * @return a key of the path patterns the changed Java files are selected by, empty if all of them are
+     */
+    String getPathPatternKey();
 }
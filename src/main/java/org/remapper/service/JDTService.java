@@ -1,6 +1,7 @@
 package org.remapper.service;
 
 import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.remapper.dto.ChildNode;
 import org.remapper.dto.MethodNode;
@@ -12,6 +13,8 @@ public interface JDTService {
 
     RootNode parseFileDNT(String filePath, String fileContent);
 
+    RootNode parseFileDNT(String filePath, CompilationUnit cu);
+
     MethodNode parseMethodSNT(String filePath, MethodDeclaration methodDeclaration);
 
     List<ChildNode> getDescendants(ASTNode node);
@@ -1,34 +1,84 @@
 package org.remapper.service;
 
-import org.apache.commons.io.FileUtils;
 import org.eclipse.jdt.core.dom.ASTParser;
 import org.eclipse.jdt.core.dom.CompilationUnit;
-import org.remapper.util.ASTParserUtils;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.remapper.util.PackageScanner;
+import org.remapper.util.ParserEnvironment;
+import org.remapper.util.SourceCache;
+import org.remapper.util.WorktreePool;
 
-import java.io.File;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.regex.Matcher;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.IntStream;
 
-public class ProjectParser {
+/**
+ * Changed files are parsed once per commit with bindings. JDT can only look up other types on a sourcepath on disk,
+ * so the Java sources of the commit are taken from a worktree leased from the shared {@link WorktreePool}
+ * instead of checking out the work tree.
+ */
+public class ProjectParser implements Closeable {
 
-    private final String projectPath;
+    private final GitService gitService;
+    private final Repository repository;
+    private final RevCommit commit;
+    private final Map<String, ObjectId> objectIds;
+    private final ObjectReader reader;
+    private final ParserEnvironment parserEnvironment;
+    private WorktreePool.Worktree worktree;
     private List<String> relatedJavaFiles;
+    private Set<String> sourceRootSet;
     private String[] sourcepathEntries;
     private String[] encodings;
 
-    public ProjectParser(String projectPath) {
-        this.projectPath = projectPath;
+    public ProjectParser(GitService gitService, Repository repository, RevCommit commit, Map<String, ObjectId> objectIds) {
+        this.gitService = gitService;
+        this.repository = repository;
+        this.commit = commit;
+        this.objectIds = objectIds;
+        this.reader = repository.newObjectReader();
+        this.parserEnvironment = ParserEnvironment.getEnvironment(repository);
+    }
+
+    public Map<String, ObjectId> getObjectIds() {
+        return objectIds;
     }
 
     public List<String> getRelatedJavaFiles() {
         return relatedJavaFiles;
     }
 
+    public String getFileContent(String filePath) throws IOException {
+        return SourceCache.getSharedCache().getSource(reader, objectIds.get(filePath));
+    }
+
+    /**
+     * @return the path of the file in the leased worktree
+     */
+    public String getSourceFilePath(String filePath) {
+        return worktree.getDirectory().getPath().replace("\\", "/") + "/" + filePath;
+    }
+
+    /**
+     * @return the commit's tree, the source roots and the parser settings, which together determine the ASTs and
+     * their bindings
+     */
+    public String getEnvironment() {
+        return commit.getTree().name() + ":" + String.join(",", sourceRootSet) + ":" + parserEnvironment.getConfigurationHash();
+    }
+
+    /**
+     * @return the parser settings, which alone determine ASTs parsed without bindings
+     */
+    public String getSourceEnvironment() {
+        return "source:" + parserEnvironment.getConfigurationHash();
+    }
+
     public String[] getSourcepathEntries() {
         return sourcepathEntries;
     }
@@ -37,47 +87,123 @@ public class ProjectParser {
         return encodings;
     }
 
-    public void buildEntityDependencies(List<String> changedJavaFiles) {
+    /**
+     * Parses the files with bindings resolved against the sourcepath, all in one createASTs call, so that the types
+     * they share are looked up once and files outside of any source root still see each other.
+     *
+     * @param javaFiles related files, the worktree is only leased if there is any
+     * @return the compilation units in the order of the files
+     */
+    public Map<String, CompilationUnit> createCompilationUnits(List<String> javaFiles) throws IOException {
+        Map<String, CompilationUnit> compilationUnits = new LinkedHashMap<>();
+        if (javaFiles.isEmpty())
+            return compilationUnits;
+        leaseWorktree();
+        String[] sourceFilePaths = new String[javaFiles.size()];
+        String[] fileEncodings = new String[javaFiles.size()];
+        Map<String, String> filePaths = new HashMap<>();
+        for (int i = 0; i < javaFiles.size(); i++) {
+            sourceFilePaths[i] = getSourceFilePath(javaFiles.get(i));
+            fileEncodings[i] = "utf-8";
+            filePaths.put(sourceFilePaths[i], javaFiles.get(i));
+        }
+        Map<String, CompilationUnit> acceptedUnits = new HashMap<>();
+        ASTParser astParser = parserEnvironment.getASTParser(sourcepathEntries, encodings);
+        astParser.createASTs(sourceFilePaths, fileEncodings, new String[0], new FileASTRequestor() {
+            @Override
+            public void acceptAST(String sourceFilePath, CompilationUnit ast) {
+                acceptedUnits.put(filePaths.get(sourceFilePath), ast);
+            }
+        }, null);
+        for (String file : javaFiles) {
+            if (acceptedUnits.containsKey(file))
+                compilationUnits.put(file, acceptedUnits.get(file));
+        }
+        return compilationUnits;
+    }
+
+    /**
+     * Parses the files one by one without bindings, in parallel. No worktree is leased.
+     *
+     * @return the compilation units in the order of the files
+     */
+    public Map<String, CompilationUnit> parseCompilationUnits(List<String> javaFiles) throws IOException {
+        String[] sources = new String[javaFiles.size()];
+        for (int i = 0; i < sources.length; i++)
+            sources[i] = getFileContent(javaFiles.get(i));
+        CompilationUnit[] units = new CompilationUnit[sources.length];
+        IntStream.range(0, units.length).parallel().forEach(i -> {
+            ASTParser astParser = parserEnvironment.getSourceParser();
+            astParser.setSource(sources[i].toCharArray());
+            units[i] = (CompilationUnit) astParser.createAST(null);
+        });
+        Map<String, CompilationUnit> compilationUnits = new LinkedHashMap<>();
+        for (int i = 0; i < units.length; i++)
+            compilationUnits.put(javaFiles.get(i), units[i]);
+        return compilationUnits;
+    }
+
+    public void buildEntityDependencies(List<String> changedJavaFiles) throws IOException {
         relatedJavaFiles = new ArrayList<>();
         populateRelatedJavaFiles(changedJavaFiles);
-        populateSourcepathEntries();
+        populateSourceRoots();
     }
 
     private void populateRelatedJavaFiles(List<String> changedJavaFiles) {
-        changedJavaFiles.forEach(file -> relatedJavaFiles.add(projectPath + "/" + file));
+        for (String file : changedJavaFiles) {
+            if (objectIds.containsKey(file))
+                relatedJavaFiles.add(file);
+        }
     }
 
-    private void populateSourcepathEntries() {
-        HashSet<String> sourceRootSet = new HashSet<>();
+    private void populateSourceRoots() throws IOException {
+        sourceRootSet = new LinkedHashSet<>();
         for (String file : relatedJavaFiles) {
-            ASTParser astParser = ASTParserUtils.getFastParser();
-            try {
-                String code = FileUtils.readFileToString(new File(file), StandardCharsets.UTF_8);
-                astParser.setSource(code.toCharArray());
-                CompilationUnit cu = (CompilationUnit) astParser.createAST(null);
-                if (cu.getPackage() == null) continue;
-                String rootPath = parseRootPath(file, cu.getPackage().getName().toString());
-                if (!rootPath.equals("") && Paths.get(rootPath).toFile().exists())
-                    sourceRootSet.add(rootPath);
-            } catch (Exception ignored) {
-            }
+            String packageName = PackageScanner.getPackageName(reader, objectIds.get(file));
+            if (packageName.isEmpty()) continue;
+            String rootPath = parseRootPath(file, packageName);
+            if (rootPath != null)
+                sourceRootSet.add(rootPath);
         }
+    }
+
+    /**
+     * The source roots are those of all related files, also when only some of them are parsed. The related files
+     * are written as well, since some of them may lie outside of any source root.
+     */
+    private void leaseWorktree() throws IOException {
+        if (worktree != null)
+            return;
+        Set<String> paths = new LinkedHashSet<>(sourceRootSet);
+        paths.addAll(relatedJavaFiles);
+        worktree = WorktreePool.getSharedPool(repository).lease(gitService, repository, commit, paths);
         sourcepathEntries = new String[sourceRootSet.size()];
         encodings = new String[sourceRootSet.size()];
         int index = 0;
         for (String sourceRoot : sourceRootSet) {
-            sourcepathEntries[index] = sourceRoot;
+            sourcepathEntries[index] = worktree.getDirectory().getPath().replace("\\", "/") + "/" + sourceRoot;
             encodings[index] = "utf-8";
             index++;
         }
     }
 
+    /**
+     * @return the source root relative to the repository, "" for the repository root,
+     * or null if the file is not located under its package directory
+     */
     private String parseRootPath(String filePath, String packageName) {
-        String path = packageName.replaceAll("\\.", Matcher.quoteReplacement(File.separator));
-        Path relativePath = Paths.get(path);
-        Path absolutePath = Paths.get(filePath).resolveSibling("");
-        int end = absolutePath.toString().lastIndexOf(relativePath.toString());
-        if (end == -1) return "";
-        return absolutePath.toString().substring(0, end).replace("\\", "/");
+        String relativePath = packageName.replace(".", "/");
+        int index = filePath.lastIndexOf("/");
+        String directory = index == -1 ? "" : filePath.substring(0, index);
+        int end = directory.lastIndexOf(relativePath);
+        if (end == -1) return null;
+        return directory.substring(0, end);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+        if (worktree != null)
+            worktree.close();
     }
 }
@@ -1,70 +1,88 @@
 package org.remapper.service;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.eclipse.jdt.core.Flags;
 import org.eclipse.jdt.core.dom.*;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevTree;
-import org.eclipse.jgit.treewalk.TreeWalk;
 import org.remapper.dto.*;
-import org.remapper.util.ASTParserUtils;
+import org.remapper.util.DNTCache;
+import org.remapper.util.DeclarationIndex;
+import org.remapper.util.DescendantCountIndex;
 import org.remapper.util.DiceFunction;
 import org.remapper.util.EntityUtils;
+import org.remapper.util.LineEdits;
+import org.remapper.util.MinHashIndex;
+import org.remapper.util.ParserEnvironment;
+import org.remapper.util.SourceCache;
+import org.remapper.util.SourceTokens;
 import org.remapper.util.StringUtils;
+import org.remapper.util.SymbolTable;
+import org.remapper.visitor.NameUsageVisitor;
 import org.remapper.visitor.NodeDeclarationVisitor;
 import org.remapper.visitor.NodeUsageVisitor;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.StringWriter;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class SoftwareEntityMatcherService {
 
+    /**
+     * declarations of modified files whose text the line edits leave untouched, before and after
+     */
+    private final Set<Pair<DeclarationNodeTree, DeclarationNodeTree>> untouchedDeclarations = new HashSet<>();
+
+    /**
+     * symbol tables of the changed files before and after, in the name-based mode only
+     */
+    private SymbolTable symbolTableBefore;
+    private SymbolTable symbolTableCurrent;
+
     protected void matchEntities(GitService gitService, JDTService jdtService, Repository repository,
                                  RevCommit currentCommit, MatchPair matchPair) throws Exception {
-        String commitId = currentCommit.getId().getName();
         Set<String> addedFiles = new LinkedHashSet<>();
         Set<String> deletedFiles = new LinkedHashSet<>();
         Set<String> modifiedFiles = new LinkedHashSet<>();
         Map<String, String> renamedFiles = new LinkedHashMap<>();
-        Map<String, String> fileContentsBefore = new LinkedHashMap<>();
-        Map<String, String> fileContentsCurrent = new LinkedHashMap<>();
         Map<String, RootNode> fileDNTsBefore = new LinkedHashMap<>();
         Map<String, RootNode> fileDNTsCurrent = new LinkedHashMap<>();
-        gitService.fileTreeDiff(repository, currentCommit, addedFiles, deletedFiles, modifiedFiles, renamedFiles);
+        Map<EntityInfo, List<EntityInfo>> dependenciesBefore = new HashMap<>();
+        Map<EntityInfo, List<EntityInfo>> dependenciesCurrent = new HashMap<>();
+        Map<String, ObjectId> objectIdsBefore = new LinkedHashMap<>();
+        Map<String, ObjectId> objectIdsCurrent = new LinkedHashMap<>();
+        gitService.fileTreeDiff(repository, currentCommit, addedFiles, deletedFiles, modifiedFiles, renamedFiles,
+                objectIdsBefore, objectIdsCurrent, matchPair.getRenameStrategies());
+        matchReformattedFiles(jdtService, repository, matchPair, modifiedFiles, objectIdsBefore, objectIdsCurrent);
 
         RevCommit parentCommit = currentCommit.getParent(0);
-        populateFileContents(repository, parentCommit, deletedFiles, fileContentsBefore);
-        populateFileContents(repository, parentCommit, modifiedFiles, fileContentsBefore);
-        populateFileContents(repository, parentCommit, renamedFiles.keySet(), fileContentsBefore);
-        populateFileContents(repository, currentCommit, addedFiles, fileContentsCurrent);
-        populateFileContents(repository, currentCommit, modifiedFiles, fileContentsCurrent);
-        populateFileContents(repository, currentCommit, new HashSet<>(renamedFiles.values()), fileContentsCurrent);
-
-        populateFileDNTs(jdtService, fileContentsBefore, fileDNTsBefore);
-        populateFileDNTs(jdtService, fileContentsCurrent, fileDNTsCurrent);
+        List<String> changedJavaFilesBefore = new ArrayList<>();
+        changedJavaFilesBefore.addAll(modifiedFiles);
+        changedJavaFilesBefore.addAll(deletedFiles);
+        changedJavaFilesBefore.addAll(renamedFiles.keySet());
+        List<String> changedJavaFilesCurrent = new ArrayList<>();
+        changedJavaFilesCurrent.addAll(modifiedFiles);
+        changedJavaFilesCurrent.addAll(addedFiles);
+        changedJavaFilesCurrent.addAll(renamedFiles.values());
+        symbolTableBefore = parseChangedFiles(gitService, jdtService, repository, parentCommit, objectIdsBefore,
+                changedJavaFilesBefore, fileDNTsBefore, dependenciesBefore);
+        symbolTableCurrent = parseChangedFiles(gitService, jdtService, repository, currentCommit, objectIdsCurrent,
+                changedJavaFilesCurrent, fileDNTsCurrent, dependenciesCurrent);
 
+        populateUntouchedDeclarations(repository, modifiedFiles, objectIdsBefore, objectIdsCurrent, fileDNTsBefore, fileDNTsCurrent);
         pruneUnchangedEntitiesInModifiedFiles(matchPair, modifiedFiles, fileDNTsBefore, fileDNTsCurrent);
         pruneUnchangedEntitiesInRenamedFiles(matchPair, renamedFiles, fileDNTsBefore, fileDNTsCurrent);
 
         matchByNameAndSignature(matchPair, modifiedFiles, fileDNTsBefore, fileDNTsCurrent);
         matchByDiceCoefficient(matchPair, modifiedFiles, renamedFiles, deletedFiles, addedFiles, fileDNTsBefore, fileDNTsCurrent);
 
-        gitService.checkoutCurrent(repository, commitId);
-        String filePath = repository.getWorkTree().getPath();
-        populateCurrentDependencies(matchPair, filePath, modifiedFiles, renamedFiles, addedFiles);
-        gitService.resetHard(repository);
-        gitService.checkoutParent(repository, commitId);
-        populateBeforeDependencies(matchPair, filePath, modifiedFiles, renamedFiles, deletedFiles);
-        gitService.resetHard(repository);
+        populateCurrentDependencies(matchPair, dependenciesCurrent);
+        populateBeforeDependencies(matchPair, dependenciesBefore);
 
         fineMatching(matchPair);
 
@@ -74,30 +92,203 @@ public class SoftwareEntityMatcherService {
         filter(matchPair);
     }
 
-    private void populateFileContents(Repository repository, RevCommit commit,
-                                      Set<String> filePaths, Map<String, String> fileContents) throws IOException {
-        RevTree parentTree = commit.getTree();
-        try (TreeWalk treeWalk = new TreeWalk(repository)) {
-            treeWalk.addTree(parentTree);
-            treeWalk.setRecursive(true);
-            while (treeWalk.next()) {
-                String pathString = treeWalk.getPathString();
-                if (filePaths.contains(pathString)) {
-                    ObjectId objectId = treeWalk.getObjectId(0);
-                    ObjectLoader loader = repository.open(objectId);
-                    StringWriter writer = new StringWriter();
-                    IOUtils.copy(loader.openStream(), writer, StandardCharsets.UTF_8);
-                    fileContents.put(pathString, writer.toString());
+    /**
+     * Modified files which only differ in formatting, comments or the order of their imports are taken out of the
+     * changed files, so they are neither resolved nor pruned, and their callers count like those of unchanged files.
+     * Their top-level types are recorded as unchanged, as pruning would do, from trees built without bindings and
+     * method bodies.
+     */
+    private void matchReformattedFiles(JDTService jdtService, Repository repository, MatchPair matchPair, Set<String> modifiedFiles,
+                                       Map<String, ObjectId> objectIdsBefore, Map<String, ObjectId> objectIdsCurrent) throws IOException {
+        if (!SourceTokens.isEnabled())
+            return;
+        ParserEnvironment environment = ParserEnvironment.getEnvironment(repository);
+        SourceCache sourceCache = SourceCache.getSharedCache();
+        try (ObjectReader reader = repository.newObjectReader()) {
+            for (Iterator<String> iterator = modifiedFiles.iterator(); iterator.hasNext(); ) {
+                String filePath = iterator.next();
+                String sourceBefore = sourceCache.getSource(reader, objectIdsBefore.get(filePath));
+                String sourceCurrent = sourceCache.getSource(reader, objectIdsCurrent.get(filePath));
+                if (!SourceTokens.haveSameDeclarations(environment, sourceBefore, sourceCurrent))
+                    continue;
+                List<DeclarationNodeTree> typesBefore = parseOutline(jdtService, environment, filePath, sourceBefore).getChildren();
+                List<DeclarationNodeTree> typesCurrent = parseOutline(jdtService, environment, filePath, sourceCurrent).getChildren();
+                if (typesBefore.size() != typesCurrent.size())
+                    continue;
+                boolean sameTypes = true;
+                for (int i = 0; i < typesBefore.size() && sameTypes; i++)
+                    sameTypes = typesBefore.get(i).equals(typesCurrent.get(i));
+                if (!sameTypes)
+                    continue;
+                for (int i = 0; i < typesBefore.size(); i++)
+                    matchPair.addUnchangedEntity(typesBefore.get(i), typesCurrent.get(i));
+                iterator.remove();
+                objectIdsBefore.remove(filePath);
+                objectIdsCurrent.remove(filePath);
+            }
+        }
+    }
+
+    private RootNode parseOutline(JDTService jdtService, ParserEnvironment environment, String filePath, String source) {
+        ASTParser parser = environment.getOutlineParser();
+        parser.setSource(source.toCharArray());
+        return jdtService.parseFileDNT(filePath, (CompilationUnit) parser.createAST(null));
+    }
+
+    /**
+     * Each changed file is parsed once, with bindings. The dependencies are extracted before the declaration node
+     * trees are built from the same compilation units, since building them removes the Javadoc of the types.
+     * Files found in the {@link DNTCache} are not parsed again.
+     * In the name-based mode of the {@link SymbolTable}, the files are parsed without bindings and the dependencies
+     * are resolved against the trees of all changed files afterwards, so only the trees are cached.
+     *
+     * @return the symbol table of the changed files in the name-based mode, null otherwise
+     */
+    private SymbolTable parseChangedFiles(GitService gitService, JDTService jdtService, Repository repository, RevCommit commit,
+                                   Map<String, ObjectId> objectIds, List<String> changedJavaFiles, Map<String, RootNode> fileDNTs,
+                                   Map<EntityInfo, List<EntityInfo>> dependencies) throws IOException {
+        DNTCache dntCache = DNTCache.getSharedCache();
+        boolean nameBased = SymbolTable.isEnabled();
+        try (ProjectParser parser = new ProjectParser(gitService, repository, commit, objectIds)) {
+            parser.buildEntityDependencies(changedJavaFiles);
+            String environment = nameBased ? parser.getSourceEnvironment() : parser.getEnvironment();
+            Map<String, RootNode> cachedDNTs = new HashMap<>();
+            Map<String, Map<EntityInfo, List<EntityInfo>>> fileDependencies = new HashMap<>();
+            List<String> parsedFiles = new ArrayList<>();
+            for (String filePath : parser.getRelatedJavaFiles()) {
+                Map<EntityInfo, List<EntityInfo>> cachedDependencies = new HashMap<>();
+                RootNode dnt = dntCache.get(objectIds.get(filePath), environment, filePath, cachedDependencies);
+                if (dnt == null) {
+                    parsedFiles.add(filePath);
+                    continue;
+                }
+                cachedDNTs.put(filePath, dnt);
+                fileDependencies.put(filePath, cachedDependencies);
+            }
+            Map<String, CompilationUnit> compilationUnits;
+            if (nameBased) {
+                compilationUnits = parser.parseCompilationUnits(parsedFiles);
+                for (String filePath : compilationUnits.keySet())
+                    fileDependencies.put(filePath, Collections.emptyMap());
+            } else {
+                compilationUnits = parser.createCompilationUnits(parsedFiles);
+                for (String filePath : compilationUnits.keySet()) {
+                    Map<EntityInfo, List<EntityInfo>> parsedDependencies = new HashMap<>();
+                    populateEntityDependencies(filePath, compilationUnits.get(filePath), parsedDependencies);
+                    fileDependencies.put(filePath, parsedDependencies);
+                }
+            }
+            populateFileDNTs(jdtService, parser, environment, compilationUnits,
+                    fileDependencies, cachedDNTs, fileDNTs);
+            SymbolTable symbolTable = nameBased ? new SymbolTable(fileDNTs.values()) : null;
+            if (nameBased) {
+                for (String filePath : parser.getRelatedJavaFiles()) {
+                    Map<EntityInfo, List<EntityInfo>> resolvedDependencies = new HashMap<>();
+                    populateEntityDependencies(fileDNTs.get(filePath), symbolTable, resolvedDependencies);
+                    fileDependencies.put(filePath, resolvedDependencies);
+                }
+            }
+            for (String filePath : parser.getRelatedJavaFiles()) {
+                if (!fileDependencies.containsKey(filePath))
+                    continue;
+                for (Map.Entry<EntityInfo, List<EntityInfo>> entry : fileDependencies.get(filePath).entrySet())
+                    dependencies.computeIfAbsent(entry.getKey(), key -> new ArrayList<>()).addAll(entry.getValue());
+            }
+            return symbolTable;
+        }
+    }
+
+    public SymbolTable getSymbolTableBefore() {
+        return symbolTableBefore;
+    }
+
+    public SymbolTable getSymbolTableCurrent() {
+        return symbolTableCurrent;
+    }
+
+    /**
+     * Trees are built in parallel on the common fork-join pool, and added to fileDNTs in the order of the blob ids.
+     * The trees built from compilation units are cached unpruned, and fileDNTs gets copies of them. The compilation
+     * units were resolved together, so the cache charges their lookup environment once.
+     */
+    private void populateFileDNTs(JDTService jdtService, ProjectParser parser, String environment,
+                                  Map<String, CompilationUnit> compilationUnits, Map<String, Map<EntityInfo, List<EntityInfo>>> fileDependencies,
+                                  Map<String, RootNode> cachedDNTs, Map<String, RootNode> fileDNTs) throws IOException {
+        DNTCache dntCache = DNTCache.getSharedCache();
+        Collection<CompilationUnit> batch = compilationUnits.values();
+        List<String> filePaths = new ArrayList<>(parser.getObjectIds().keySet());
+        RootNode[] dnts = new RootNode[filePaths.size()];
+        IntStream.range(0, dnts.length).parallel().forEach(i -> {
+            String filePath = filePaths.get(i);
+            if (cachedDNTs.containsKey(filePath)) {
+                dnts[i] = cachedDNTs.get(filePath);
+            } else if (compilationUnits.containsKey(filePath)) {
+                RootNode dnt = jdtService.parseFileDNT(filePath, compilationUnits.get(filePath));
+                ObjectId blobId = parser.getObjectIds().get(filePath);
+                dntCache.put(blobId, environment, filePath, dnt, fileDependencies.get(filePath), batch);
+                dnts[i] = dnt.copy(null);
+            }
+        });
+        for (int i = 0; i < dnts.length; i++) {
+            String filePath = filePaths.get(i);
+            fileDNTs.put(filePath, dnts[i] != null ? dnts[i] : jdtService.parseFileDNT(filePath, parser.getFileContent(filePath)));
+        }
+    }
+
+    /**
+     * The whole files are still parsed, since the dependencies need their bindings, but the JGit edit list of a
+     * modified file tells which declarations are copied verbatim, so that pruning does not flatten them to compare.
+     * A declaration is untouched if no edit falls within its lines and it starts and ends at the same columns of the
+     * shifted lines.
+     */
+    private void populateUntouchedDeclarations(Repository repository, Set<String> modifiedFiles, Map<String, ObjectId> objectIdsBefore,
+                                               Map<String, ObjectId> objectIdsCurrent, Map<String, RootNode> fileDNTsBefore,
+                                               Map<String, RootNode> fileDNTsCurrent) throws IOException {
+        SourceCache sourceCache = SourceCache.getSharedCache();
+        try (ObjectReader reader = repository.newObjectReader()) {
+            for (String filePath : modifiedFiles) {
+                LineEdits edits = new LineEdits(sourceCache.getSource(reader, objectIdsBefore.get(filePath)),
+                        sourceCache.getSource(reader, objectIdsCurrent.get(filePath)));
+                Map<String, DeclarationNodeTree> nodesCurrent = new HashMap<>();
+                for (DeclarationNodeTree node : getDescendants(fileDNTsCurrent.get(filePath))) {
+                    int[] lines = getLineRange(node);
+                    if (lines != null)
+                        nodesCurrent.put(lines[0] + ":" + lines[1] + ":" + lines[2] + ":" + lines[3], node);
+                }
+                for (DeclarationNodeTree node : getDescendants(fileDNTsBefore.get(filePath))) {
+                    int[] lines = getLineRange(node);
+                    if (lines == null || !edits.isUntouched(lines[0], lines[2]))
+                        continue;
+                    DeclarationNodeTree nodeCurrent = nodesCurrent.get(edits.mapLine(lines[0]) + ":" + lines[1] + ":" +
+                            edits.mapLine(lines[2]) + ":" + lines[3]);
+                    if (nodeCurrent != null && node.equals(nodeCurrent))
+                        untouchedDeclarations.add(Pair.of(node, nodeCurrent));
                 }
             }
         }
     }
 
-    private void populateFileDNTs(JDTService jdtService, Map<String, String> fileContents, Map<String, RootNode> fileDNTs) {
-        for (String filePath : fileContents.keySet()) {
-            RootNode dntBefore = jdtService.parseFileDNT(filePath, fileContents.get(filePath));
-            fileDNTs.put(filePath, dntBefore);
+    private List<DeclarationNodeTree> getDescendants(DeclarationNodeTree dnt) {
+        List<DeclarationNodeTree> descendants = new ArrayList<>();
+        for (DeclarationNodeTree child : dnt.getChildren()) {
+            descendants.add(child);
+            descendants.addAll(getDescendants(child));
         }
+        return descendants;
+    }
+
+    /**
+     * @return the 0-based start line, start column, end line and end column of the declaration, or null if it is
+     * not part of the compilation unit, like the single fragment copies of field declarations
+     */
+    private int[] getLineRange(DeclarationNodeTree node) {
+        ASTNode declaration = node.getDeclaration();
+        if (!(declaration.getRoot() instanceof CompilationUnit))
+            return null;
+        CompilationUnit cu = (CompilationUnit) declaration.getRoot();
+        int start = declaration.getStartPosition();
+        int end = start + declaration.getLength() - 1;
+        return new int[]{cu.getLineNumber(start) - 1, cu.getColumnNumber(start), cu.getLineNumber(end) - 1, cu.getColumnNumber(end)};
     }
 
     private void pruneUnchangedEntitiesInModifiedFiles(MatchPair matchPair, Set<String> modifiedFiles, Map<String, RootNode> fileDNTsBefore, Map<String, RootNode> fileDNTsCurrent) {
@@ -118,7 +309,7 @@ public class SoftwareEntityMatcherService {
     }
 
     private boolean pruneUnchangedEntities(MatchPair matchPair, DeclarationNodeTree dntBefore, DeclarationNodeTree dntCurrent) {
-        if (StringUtils.equals(dntBefore.getDeclaration().toString(), dntCurrent.getDeclaration().toString())) {
+        if (untouchedDeclarations.contains(Pair.of(dntBefore, dntCurrent)) || dntBefore.hasSameDeclaration(dntCurrent)) {
             if (dntBefore.isRoot() && dntCurrent.isRoot() && dntBefore.hasChildren() && dntCurrent.hasChildren())
                 pruneUnchangedEntities(matchPair, dntBefore.getChildren(), dntCurrent.getChildren());
             return true;
@@ -130,9 +321,10 @@ public class SoftwareEntityMatcherService {
     private void pruneUnchangedEntities(MatchPair matchPair, List<DeclarationNodeTree> childDNTsBefore, List<DeclarationNodeTree> childDNTsCurrent) {
         List<DeclarationNodeTree> deletionBefore = new ArrayList<>();
         List<DeclarationNodeTree> deletionCurrent = new ArrayList<>();
+        DeclarationIndex index = new DeclarationIndex(childDNTsCurrent);
         for (DeclarationNodeTree node1 : childDNTsBefore) {
-            for (DeclarationNodeTree node2 : childDNTsCurrent) {
-                if (!node1.equals(node2) || !pruneUnchangedEntities(matchPair, node1, node2))
+            for (DeclarationNodeTree node2 : index.getCounterparts(node1)) {
+                if (!pruneUnchangedEntities(matchPair, node1, node2))
                     continue;
                 deletionBefore.add(node1);
                 deletionCurrent.add(node2);
@@ -144,7 +336,7 @@ public class SoftwareEntityMatcherService {
     }
 
     private boolean pruneUnchangedEntities(MatchPair matchPair, String filePath, String renamedFilePath, DeclarationNodeTree dntBefore, DeclarationNodeTree dntCurrent) {
-        if (StringUtils.equals(dntBefore.getDeclaration().toString(), dntCurrent.getDeclaration().toString())) {
+        if (dntBefore.hasSameDeclaration(dntCurrent)) {
             if (dntBefore.isRoot() && dntCurrent.isRoot() && dntBefore.hasChildren() && dntCurrent.hasChildren())
                 pruneUnchangedEntities(matchPair, filePath, renamedFilePath, dntBefore.getChildren(), dntCurrent.getChildren());
             return true;
@@ -156,9 +348,10 @@ public class SoftwareEntityMatcherService {
     private void pruneUnchangedEntities(MatchPair matchPair, String filePath, String renamedFilePath, List<DeclarationNodeTree> childDNTsBefore, List<DeclarationNodeTree> childDNTsCurrent) {
         List<DeclarationNodeTree> deletionBefore = new ArrayList<>();
         List<DeclarationNodeTree> deletionCurrent = new ArrayList<>();
+        DeclarationIndex index = new DeclarationIndex(childDNTsCurrent, filePath, renamedFilePath);
         for (DeclarationNodeTree node1 : childDNTsBefore) {
-            for (DeclarationNodeTree node2 : childDNTsCurrent) {
-                if (!node1.equals(node2, filePath, renamedFilePath) || !pruneUnchangedEntities(matchPair, filePath, renamedFilePath, node1, node2))
+            for (DeclarationNodeTree node2 : index.getCounterparts(node1)) {
+                if (!pruneUnchangedEntities(matchPair, filePath, renamedFilePath, node1, node2))
                     continue;
                 deletionBefore.add(node1);
                 deletionCurrent.add(node2);
@@ -169,15 +362,18 @@ public class SoftwareEntityMatcherService {
         pruneEntities(childDNTsBefore, childDNTsCurrent, deletionBefore, deletionCurrent);
     }
 
+    /**
+     * The hashes tell differing declarations apart, and the text of those with equal hashes is compared, as in
+     * {@link #filter(MatchPair)}, to rule out a collision.
+     */
     private void addInternalCandidateEntity(MatchPair matchPair, String filePath, String renamedFilePath, DeclarationNodeTree node1, DeclarationNodeTree node2) {
-        if (node1.equals(node2, filePath, renamedFilePath) &&
-                StringUtils.equals(node1.getDeclaration().toString(), node2.getDeclaration().toString())) {
+        if (node1.getDeclarationHash() == node2.getDeclarationHash() &&
+                node1.getDeclaration().toString().equals(node2.getDeclaration().toString())) {
             matchPair.addMatchedEntity(node1, node2);
             if (node1.hasChildren() && node2.hasChildren()) {
-                List<DeclarationNodeTree> children1 = node1.getChildren();
-                List<DeclarationNodeTree> children2 = node2.getChildren();
-                for (DeclarationNodeTree child1 : children1)
-                    for (DeclarationNodeTree child2 : children2)
+                DeclarationIndex index = new DeclarationIndex(node2.getChildren(), filePath, renamedFilePath);
+                for (DeclarationNodeTree child1 : node1.getChildren())
+                    for (DeclarationNodeTree child2 : index.getCounterparts(child1))
                         addInternalCandidateEntity(matchPair, filePath, renamedFilePath, child1, child2);
             }
         }
@@ -200,72 +396,55 @@ public class SoftwareEntityMatcherService {
             RootNode dntCurrent = fileDNTsCurrent.get(filePath);
             if (!dntBefore.hasChildren() || !dntCurrent.hasChildren())
                 continue;
-            List<DeclarationNodeTree> treeNodesBefore = dntBefore.getAllNodes();
-            List<DeclarationNodeTree> treeNodesCurrent = dntCurrent.getAllNodes();
-            for (DeclarationNodeTree node1 : treeNodesBefore) {
-                for (DeclarationNodeTree node2 : treeNodesCurrent) {
-                    if (!node1.equals(node2))
-                        continue;
-                    if (node1.getType() == EntityType.CLASS || node1.getType() == EntityType.INTERFACE ||
-                            node1.getType() == EntityType.ENUM || node1.getType() == EntityType.RECORD ||
-                            node1.getType() == EntityType.ANNOTATION_TYPE || node1.getType() == EntityType.INITIALIZER ||
-                            node1.getType() == EntityType.ENUM_CONSTANT) {
-                        node1.setMatched();
-                        node2.setMatched();
-                        matchPair.addMatchedEntity(node1, node2);
-                        break;
-                    } else if (node1.getType() == EntityType.FIELD) {
-                        FieldDeclaration fd1 = ((FieldDeclaration) node1.getDeclaration());
-                        FieldDeclaration fd2 = ((FieldDeclaration) node2.getDeclaration());
-                        if (StringUtils.equals(fd1.getType().toString(), fd2.getType().toString())) {
-                            node1.setMatched();
-                            node2.setMatched();
-                            matchPair.addMatchedEntity(node1, node2);
-                            break;
-                        }
-                    } else if (node1.getType() == EntityType.METHOD) {
-                        MethodDeclaration md1 = ((MethodDeclaration) node1.getDeclaration());
-                        MethodDeclaration md2 = ((MethodDeclaration) node2.getDeclaration());
-                        String pl1 = ((List<SingleVariableDeclaration>) md1.parameters()).stream().
-                                map(declaration -> declaration.isVarargs() ? declaration.getType().toString() + "[]" : declaration.getType().toString()).
-                                collect(Collectors.joining(","));
-                        String pl2 = ((List<SingleVariableDeclaration>) md2.parameters()).stream().
-                                map(declaration -> declaration.isVarargs() ? declaration.getType().toString() + "[]" : declaration.getType().toString()).
-                                collect(Collectors.joining(","));
-                        String tp1 = ((List<TypeParameter>) md1.typeParameters()).stream().
-                                map(TypeParameter::toString).
-                                collect(Collectors.joining(","));
-                        String tp2 = ((List<TypeParameter>) md2.typeParameters()).stream().
-                                map(TypeParameter::toString).
-                                collect(Collectors.joining(","));
-                        if (md1.getReturnType2() == null && md2.getReturnType2() == null && StringUtils.equals(pl1, pl2) &&
-                                StringUtils.equals(tp1, tp2)) {
-                            node1.setMatched();
-                            node2.setMatched();
-                            matchPair.addMatchedEntity(node1, node2);
-                            break;
-                        }
-                        if (md1.getReturnType2() != null && md2.getReturnType2() != null &&
-                                StringUtils.equals(md1.getReturnType2().toString(), md2.getReturnType2().toString()) &&
-                                StringUtils.equals(pl1, pl2) && StringUtils.equals(tp1, tp2)) {
-                            node1.setMatched();
-                            node2.setMatched();
-                            matchPair.addMatchedEntity(node1, node2);
-                            break;
-                        }
-                    } else if (node1.getType() == EntityType.ANNOTATION_MEMBER) {
-                        AnnotationTypeMemberDeclaration atd1 = ((AnnotationTypeMemberDeclaration) node1.getDeclaration());
-                        AnnotationTypeMemberDeclaration atd2 = ((AnnotationTypeMemberDeclaration) node2.getDeclaration());
-                        if (StringUtils.equals(atd1.getType().toString(), atd2.getType().toString())) {
-                            node1.setMatched();
-                            node2.setMatched();
-                            matchPair.addMatchedEntity(node1, node2);
-                            break;
-                        }
-                    }
-                }
+            Map<List<Object>, DeclarationNodeTree> treeNodesCurrent = new HashMap<>();
+            for (DeclarationNodeTree node2 : dntCurrent.getAllNodes()) {
+                List<Object> key = getSignatureKey(node2);
+                if (key != null)
+                    treeNodesCurrent.putIfAbsent(key, node2);
             }
+            for (DeclarationNodeTree node1 : dntBefore.getAllNodes()) {
+                List<Object> key = getSignatureKey(node1);
+                DeclarationNodeTree node2 = key == null ? null : treeNodesCurrent.get(key);
+                if (node2 == null)
+                    continue;
+                node1.setMatched();
+                node2.setMatched();
+                matchPair.addMatchedEntity(node1, node2);
+            }
+        }
+    }
+
+    /**
+     * Types, initializers and enum constants match by their names, fields and annotation members also by their
+     * types, and methods by their return types, parameter types and type parameters.
+     *
+     * @return the name key followed by the signature, or null for nodes which do not match by signature
+     */
+    private List<Object> getSignatureKey(DeclarationNodeTree node) {
+        List<Object> key = new ArrayList<>(node.getNameKey());
+        if (node.getType() == EntityType.CLASS || node.getType() == EntityType.INTERFACE ||
+                node.getType() == EntityType.ENUM || node.getType() == EntityType.RECORD ||
+                node.getType() == EntityType.ANNOTATION_TYPE || node.getType() == EntityType.INITIALIZER ||
+                node.getType() == EntityType.ENUM_CONSTANT) {
+            return key;
+        } else if (node.getType() == EntityType.FIELD) {
+            key.add(((FieldDeclaration) node.getDeclaration()).getType().toString());
+            return key;
+        } else if (node.getType() == EntityType.METHOD) {
+            MethodDeclaration md = ((MethodDeclaration) node.getDeclaration());
+            key.add(md.getReturnType2() == null ? null : md.getReturnType2().toString());
+            key.add(((List<SingleVariableDeclaration>) md.parameters()).stream().
+                    map(declaration -> declaration.isVarargs() ? declaration.getType().toString() + "[]" : declaration.getType().toString()).
+                    collect(Collectors.joining(",")));
+            key.add(((List<TypeParameter>) md.typeParameters()).stream().
+                    map(TypeParameter::toString).
+                    collect(Collectors.joining(",")));
+            return key;
+        } else if (node.getType() == EntityType.ANNOTATION_MEMBER) {
+            key.add(((AnnotationTypeMemberDeclaration) node.getDeclaration()).getType().toString());
+            return key;
         }
+        return null;
     }
 
     private void matchByDiceCoefficient(MatchPair matchPair, Set<String> modifiedFiles, Map<String, String> renamedFiles,
@@ -317,40 +496,85 @@ public class SoftwareEntityMatcherService {
         matchPair.getAddedEntities().removeAll(matchPair.getCandidateEntitiesRight());
     }
 
+    /**
+     * Only the pairs whose numbers of descendants can reach the minimum coefficient are scored, and if the
+     * {@link MinHashIndex} is enabled, only those it retrieves.
+     */
     private void matchLeafNodesByDice(MatchPair matchPair, List<LeafNode> leafNodesBefore, List<LeafNode> leafNodesCurrent) {
-        List<EntityPair> entityPairs = new ArrayList<>();
-        for (LeafNode leafBefore : leafNodesBefore) {
-            for (LeafNode leafCurrent : leafNodesCurrent) {
-                if (leafBefore.getType() != leafCurrent.getType())
+        MinHashIndex<LeafNode> index = MinHashIndex.isEnabled() ? MinHashIndex.ofLeafNodes(leafNodesCurrent) : null;
+        DescendantCountIndex countIndex = index == null ? new DescendantCountIndex(leafNodesCurrent) : null;
+        AtomicInteger retrieved = new AtomicInteger();
+        List<EntityPair> entityPairs = scorePairs(leafNodesBefore.size(), row -> {
+            LeafNode leafBefore = leafNodesBefore.get(row);
+            List<LeafNode> candidates = index == null ? countIndex.getCandidates(leafBefore, DiceFunction.minDice) :
+                    index.getCandidates(leafBefore);
+            List<EntityPair> pairs = new ArrayList<>();
+            for (LeafNode leafCurrent : candidates) {
+                if (leafBefore.getType() != leafCurrent.getType() ||
+                        DiceFunction.calculateDiceBound(leafBefore, leafCurrent) < DiceFunction.minDice)
                     continue;
+                retrieved.incrementAndGet();
                 double dice = DiceFunction.calculateDice(leafBefore, leafCurrent);
                 if (dice < DiceFunction.minDice)
                     continue;
                 EntityPair entityPair = new EntityPair(leafBefore, leafCurrent);
                 entityPair.setDice(dice);
-                entityPairs.add(entityPair);
+                pairs.add(entityPair);
             }
-        }
+            return pairs;
+        });
+        if (index != null)
+            index.addStatistics(leafNodesBefore, entityPairs, retrieved.get(), DiceFunction::calculateDice);
         addCandidateEntities(matchPair, entityPairs);
     }
 
+    /**
+     * The candidates of the {@link MinHashIndex} are looked up before scoring, since the tokens of internal nodes are
+     * numbered as they are met.
+     */
     private void matchInternalNodesByDice(MatchPair matchPair, List<InternalNode> internalNodesBefore, List<InternalNode> internalNodesCurrent) {
-        List<EntityPair> entityPairs = new ArrayList<>();
-        for (InternalNode internalBefore : internalNodesBefore) {
-            for (InternalNode internalCurrent : internalNodesCurrent) {
+        MinHashIndex<InternalNode> index = MinHashIndex.isEnabled() ?
+                MinHashIndex.ofInternalNodes(matchPair, internalNodesBefore, internalNodesCurrent) : null;
+        List<List<InternalNode>> candidates = new ArrayList<>();
+        for (InternalNode internalBefore : internalNodesBefore)
+            candidates.add(index == null ? internalNodesCurrent : index.getCandidates(internalBefore));
+        AtomicInteger retrieved = new AtomicInteger();
+        List<EntityPair> entityPairs = scorePairs(internalNodesBefore.size(), row -> {
+            InternalNode internalBefore = internalNodesBefore.get(row);
+            List<EntityPair> pairs = new ArrayList<>();
+            for (InternalNode internalCurrent : candidates.get(row)) {
                 if (internalBefore.getType() != internalCurrent.getType())
                     continue;
+                retrieved.incrementAndGet();
                 double dice = DiceFunction.calculateDice(matchPair, internalBefore, internalCurrent);
                 if (dice < DiceFunction.minDice)
                     continue;
                 EntityPair entityPair = new EntityPair(internalBefore, internalCurrent);
                 entityPair.setDice(dice);
-                entityPairs.add(entityPair);
+                pairs.add(entityPair);
             }
-        }
+            return pairs;
+        });
+        if (index != null)
+            index.addStatistics(internalNodesBefore, entityPairs, retrieved.get(),
+                    (internalBefore, internalCurrent) -> DiceFunction.calculateDice(matchPair, internalBefore, internalCurrent));
         addCandidateEntities(matchPair, entityPairs);
     }
 
+    /**
+     * Scores the rows of a pair matrix on the common fork-join pool. The pairs of each row are concatenated in the
+     * order of the rows, so that the stable sort by Dice breaks ties by the positions of both nodes, and the pairs
+     * selected are the same as when the rows are scored one after another.
+     *
+     * @param scorer the pairs of a row worth selecting, in the order of the nodes after
+     */
+    private List<EntityPair> scorePairs(int rows, IntFunction<List<EntityPair>> scorer) {
+        return IntStream.range(0, rows).parallel()
+                .mapToObj(scorer)
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
     private void addCandidateEntities(MatchPair matchPair, List<EntityPair> entityPairs) {
         Collections.sort(entityPairs);
         Set<DeclarationNodeTree> existBefore = new HashSet<>();
@@ -366,38 +590,77 @@ public class SoftwareEntityMatcherService {
         }
     }
 
-    private void populateEntityDependencies(ProjectParser parser, Map<EntityInfo, List<EntityInfo>> dependencies) {
-        for (String filePath : parser.getRelatedJavaFiles()) {
-            ASTParser astParser = ASTParserUtils.getASTParser(parser.getSourcepathEntries(), parser.getEncodings());
-            try {
-                String code = FileUtils.readFileToString(new File(filePath), StandardCharsets.UTF_8);
-                astParser.setSource(code.toCharArray());
-                CompilationUnit cu = (CompilationUnit) astParser.createAST(null);
-                NodeDeclarationVisitor visitor = new NodeDeclarationVisitor();
-                cu.accept(visitor);
-                List<TypeDeclaration> typeDeclarations = visitor.getTypeDeclarations();
-                List<EnumDeclaration> enumDeclarations = visitor.getEnumDeclarations();
-                List<AnnotationTypeDeclaration> annotationTypeDeclarations = visitor.getAnnotationTypeDeclarations();
-                List<RecordDeclaration> recordDeclarations = visitor.getRecordDeclarations();
-                List<Initializer> initializers = visitor.getInitializers();
-                List<EnumConstantDeclaration> enumConstantDeclarations = visitor.getEnumConstantDeclarations();
-                List<FieldDeclaration> fieldDeclarations = visitor.getFieldDeclarations();
-                List<MethodDeclaration> methodDeclarations = visitor.getMethodDeclarations();
-                List<AnnotationTypeMemberDeclaration> annotationMemberDeclarations = visitor.getAnnotationMemberDeclarations();
-                populateDependencyOnTypeDeclaration(typeDeclarations, dependencies, cu, filePath);
-                populateDependencyOnEnumDeclaration(enumDeclarations, dependencies, cu, filePath);
-                populateDependencyOnAnnotationTypeDeclaration(annotationTypeDeclarations, dependencies, cu, filePath);
-                populateDependencyOnRecordDeclaration(recordDeclarations, dependencies, cu, filePath);
-                populateDependencyInInitializers(initializers, dependencies, cu, filePath);
-                populateDependencyInFieldDeclaration(fieldDeclarations, dependencies, cu, filePath);
-                populateDependencyInMethodDeclaration(methodDeclarations, dependencies, cu, filePath);
-                populateDependencyInAnnotationMemberDeclaration(annotationMemberDeclarations, dependencies, cu, filePath);
-                populateDependencyInEnumConstant(enumConstantDeclarations, dependencies, cu, filePath);
-            } catch (IOException ignored) {
+    private void populateEntityDependencies(String filePath, CompilationUnit cu, Map<EntityInfo, List<EntityInfo>> dependencies) {
+        NodeDeclarationVisitor visitor = new NodeDeclarationVisitor();
+        cu.accept(visitor);
+        List<TypeDeclaration> typeDeclarations = visitor.getTypeDeclarations();
+        List<EnumDeclaration> enumDeclarations = visitor.getEnumDeclarations();
+        List<AnnotationTypeDeclaration> annotationTypeDeclarations = visitor.getAnnotationTypeDeclarations();
+        List<RecordDeclaration> recordDeclarations = visitor.getRecordDeclarations();
+        List<Initializer> initializers = visitor.getInitializers();
+        List<EnumConstantDeclaration> enumConstantDeclarations = visitor.getEnumConstantDeclarations();
+        List<FieldDeclaration> fieldDeclarations = visitor.getFieldDeclarations();
+        List<MethodDeclaration> methodDeclarations = visitor.getMethodDeclarations();
+        List<AnnotationTypeMemberDeclaration> annotationMemberDeclarations = visitor.getAnnotationMemberDeclarations();
+        populateDependencyOnTypeDeclaration(typeDeclarations, dependencies, cu, filePath);
+        populateDependencyOnEnumDeclaration(enumDeclarations, dependencies, cu, filePath);
+        populateDependencyOnAnnotationTypeDeclaration(annotationTypeDeclarations, dependencies, cu, filePath);
+        populateDependencyOnRecordDeclaration(recordDeclarations, dependencies, cu, filePath);
+        populateDependencyInInitializers(initializers, dependencies, cu, filePath);
+        populateDependencyInFieldDeclaration(fieldDeclarations, dependencies, cu, filePath);
+        populateDependencyInMethodDeclaration(methodDeclarations, dependencies, cu, filePath);
+        populateDependencyInAnnotationMemberDeclaration(annotationMemberDeclarations, dependencies, cu, filePath);
+        populateDependencyInEnumConstant(enumConstantDeclarations, dependencies, cu, filePath);
+    }
+
+    /**
+     * Name-based counterpart of {@link #populateEntityDependencies(String, CompilationUnit, Map)}, which visits the
+     * same parts of each declaration and resolves the usages with the symbol table.
+     */
+    private void populateEntityDependencies(RootNode dnt, SymbolTable symbolTable, Map<EntityInfo, List<EntityInfo>> dependencies) {
+        CompilationUnit cu = (CompilationUnit) dnt.getDeclaration();
+        for (DeclarationNodeTree node : getDescendants(dnt)) {
+            NameUsageVisitor visitor = new NameUsageVisitor(symbolTable, cu, SymbolTable.getEnclosingTypes(node));
+            ASTNode declaration = node.getDeclaration();
+            EntityInfo entity = node.getEntity();
+            if (declaration instanceof AbstractTypeDeclaration) {
+                if (declaration instanceof TypeDeclaration) {
+                    Type superclassType = ((TypeDeclaration) declaration).getSuperclassType();
+                    if (superclassType != null)
+                        superclassType.accept(visitor);
+                    acceptAll(((TypeDeclaration) declaration).superInterfaceTypes(), visitor);
+                    acceptAll(((TypeDeclaration) declaration).typeParameters(), visitor);
+                } else if (declaration instanceof EnumDeclaration) {
+                    acceptAll(((EnumDeclaration) declaration).superInterfaceTypes(), visitor);
+                } else if (declaration instanceof RecordDeclaration) {
+                    acceptAll(((RecordDeclaration) declaration).superInterfaceTypes(), visitor);
+                    acceptAll(((RecordDeclaration) declaration).typeParameters(), visitor);
+                }
+                for (Object modifier : ((AbstractTypeDeclaration) declaration).modifiers()) {
+                    if (((IExtendedModifier) modifier).isAnnotation())
+                        ((Annotation) modifier).accept(visitor);
+                }
+            } else if (declaration instanceof FieldDeclaration) {
+                ((FieldDeclaration) declaration).getType().accept(visitor);
+                for (Object fragment : ((FieldDeclaration) declaration).fragments()) {
+                    if (((VariableDeclarationFragment) fragment).getName().getIdentifier().equals(node.getName()))
+                        ((VariableDeclarationFragment) fragment).accept(visitor);
+                }
+            } else {
+                declaration.accept(visitor);
             }
+            List<EntityInfo> entityUsages = visitor.getEntityUsages();
+            if (node.getType() == EntityType.FIELD || node.getType() == EntityType.METHOD || node.getType() == EntityType.ENUM_CONSTANT)
+                entityUsages.removeIf(entity::equals);
+            populateDependencyInReverse(entity, entityUsages, dependencies);
         }
     }
 
+    private void acceptAll(List<?> nodes, ASTVisitor visitor) {
+        for (Object node : nodes)
+            ((ASTNode) node).accept(visitor);
+    }
+
     private void populateDependencyOnTypeDeclaration(List<TypeDeclaration> typeDeclarations, Map<EntityInfo, List<EntityInfo>> dependencies, CompilationUnit cu, String filePath) {
         for (TypeDeclaration declaration : typeDeclarations) {
             Type superclassType = declaration.getSuperclassType();
@@ -586,17 +849,8 @@ public class SoftwareEntityMatcherService {
         }
     }
 
-    private void populateCurrentDependencies(MatchPair matchPair, String projectPath, Set<String> modifiedFiles,
-                                             Map<String, String> renamedFiles, Set<String> addedFiles) {
-        ProjectParser parser = new ProjectParser(projectPath);
+    private void populateCurrentDependencies(MatchPair matchPair, Map<EntityInfo, List<EntityInfo>> dependencies) {
         Map<EntityInfo, DeclarationNodeTree> entities = new HashMap<>();
-        List<String> changedJavaFiles = new ArrayList<>();
-        changedJavaFiles.addAll(modifiedFiles);
-        changedJavaFiles.addAll(addedFiles);
-        changedJavaFiles.addAll(renamedFiles.values());
-        Map<EntityInfo, List<EntityInfo>> dependencies = new HashMap<>();
-        parser.buildEntityDependencies(changedJavaFiles);
-        populateEntityDependencies(parser, dependencies);
         for (DeclarationNodeTree dnt : matchPair.getMatchedEntitiesRight())
             entities.put(dnt.getEntity(), dnt);
         for (DeclarationNodeTree dnt : matchPair.getCandidateEntitiesRight())
@@ -609,17 +863,8 @@ public class SoftwareEntityMatcherService {
         }
     }
 
-    private void populateBeforeDependencies(MatchPair matchPair, String projectPath, Set<String> modifiedFiles,
-                                            Map<String, String> renamedFiles, Set<String> deletedFiles) {
-        ProjectParser parser = new ProjectParser(projectPath);
-        List<String> changedJavaFiles = new ArrayList<>();
+    private void populateBeforeDependencies(MatchPair matchPair, Map<EntityInfo, List<EntityInfo>> dependencies) {
         Map<EntityInfo, DeclarationNodeTree> entities = new HashMap<>();
-        changedJavaFiles.addAll(modifiedFiles);
-        changedJavaFiles.addAll(deletedFiles);
-        changedJavaFiles.addAll(renamedFiles.keySet());
-        Map<EntityInfo, List<EntityInfo>> dependencies = new HashMap<>();
-        parser.buildEntityDependencies(changedJavaFiles);
-        populateEntityDependencies(parser, dependencies);
         for (DeclarationNodeTree dnt : matchPair.getMatchedEntitiesLeft())
             entities.put(dnt.getEntity(), dnt);
         for (DeclarationNodeTree dnt : matchPair.getCandidateEntitiesLeft())
@@ -634,28 +879,33 @@ public class SoftwareEntityMatcherService {
 
     private void fineMatching(MatchPair matchPair) {
         for (int i = 0; i < 10; i++) {
-            Set<Pair<DeclarationNodeTree, DeclarationNodeTree>> temp = new HashSet<>();
-            Set<DeclarationNodeTree> beforeEntities = new HashSet<>();
-            Set<DeclarationNodeTree> currentEntities = new HashSet<>();
-            List<EntityPair> entityPairs = new ArrayList<>();
+            Set<Pair<DeclarationNodeTree, DeclarationNodeTree>> temp = new LinkedHashSet<>();
+            Set<DeclarationNodeTree> beforeEntities = new LinkedHashSet<>();
+            Set<DeclarationNodeTree> currentEntities = new LinkedHashSet<>();
             beforeEntities.addAll(matchPair.getCandidateEntitiesLeft());
             beforeEntities.addAll(matchPair.getDeletedEntities());
             currentEntities.addAll(matchPair.getCandidateEntitiesRight());
             currentEntities.addAll(matchPair.getAddedEntities());
-            for (DeclarationNodeTree dntBefore : beforeEntities) {
+            List<DeclarationNodeTree> rowsBefore = new ArrayList<>(beforeEntities);
+            List<EntityPair> entityPairs = scorePairs(rowsBefore.size(), row -> {
+                DeclarationNodeTree dntBefore = rowsBefore.get(row);
+                List<EntityPair> pairs = new ArrayList<>();
                 for (DeclarationNodeTree dntCurrent : currentEntities) {
                     if (dntBefore.getType() == dntCurrent.getType() ||
                             ((dntBefore.getType() == EntityType.CLASS || dntBefore.getType() == EntityType.INTERFACE || dntBefore.getType() == EntityType.ENUM) &&
                                     (dntCurrent.getType() == EntityType.CLASS || dntCurrent.getType() == EntityType.INTERFACE || dntCurrent.getType() == EntityType.ENUM))) {
+                        if (DiceFunction.calculateSimilarityBound(dntBefore, dntCurrent) < DiceFunction.minDice)
+                            continue;
                         double dice = DiceFunction.calculateSimilarity(matchPair, dntBefore, dntCurrent);
                         if (dice < DiceFunction.minDice)
                             continue;
                         EntityPair entityPair = new EntityPair(dntBefore, dntCurrent);
-                        entityPairs.add(entityPair);
+                        pairs.add(entityPair);
                         entityPair.setDice(dice);
                     }
                 }
-            }
+                return pairs;
+            });
             Collections.sort(entityPairs);
             Set<DeclarationNodeTree> existBefore = new HashSet<>();
             Set<DeclarationNodeTree> existCurrent = new HashSet<>();
@@ -685,8 +935,10 @@ public class SoftwareEntityMatcherService {
     private void additionalMatchByName(MatchPair matchPair) {
         Set<DeclarationNodeTree> deletionBefore = new HashSet<>();
         Set<DeclarationNodeTree> deletionCurrent = new HashSet<>();
-        List<EntityPair> entityPairs = new ArrayList<>();
-        for (DeclarationNodeTree dntBefore : matchPair.getDeletedEntities()) {
+        List<DeclarationNodeTree> rowsBefore = new ArrayList<>(matchPair.getDeletedEntities());
+        List<EntityPair> entityPairs = scorePairs(rowsBefore.size(), row -> {
+            DeclarationNodeTree dntBefore = rowsBefore.get(row);
+            List<EntityPair> pairs = new ArrayList<>();
             for (DeclarationNodeTree dntCurrent : matchPair.getAddedEntities()) {
                 if (dntBefore.equals(dntCurrent)) {
                     double dice = 0;
@@ -696,7 +948,7 @@ public class SoftwareEntityMatcherService {
                         dice = DiceFunction.calculateDice((LeafNode) dntBefore, (LeafNode) dntCurrent);
                     }
                     EntityPair entityPair = new EntityPair(dntBefore, dntCurrent);
-                    entityPairs.add(entityPair);
+                    pairs.add(entityPair);
                     entityPair.setDice(dice);
                 } else if (dntBefore.getType() == EntityType.ENUM && dntCurrent.getType() == EntityType.ENUM &&
                         dntBefore.getName().equals(dntCurrent.getName())) {
@@ -725,21 +977,24 @@ public class SoftwareEntityMatcherService {
                         }
                         if (methods1.size() > 0 && methods1.size() == intersection && constants > 0) {
                             EntityPair entityPair = new EntityPair(dntBefore, dntCurrent);
-                            entityPairs.add(entityPair);
+                            pairs.add(entityPair);
                             entityPair.setDice(constants);
                         }
                     }
                 }
             }
-        }
+            return pairs;
+        });
         selectByDice(matchPair, deletionBefore, deletionCurrent, entityPairs);
     }
 
     private void additionalMatchByDice(MatchPair matchPair) {
         Set<DeclarationNodeTree> deletionBefore = new HashSet<>();
         Set<DeclarationNodeTree> deletionCurrent = new HashSet<>();
-        List<EntityPair> entityPairs = new ArrayList<>();
-        for (DeclarationNodeTree dntBefore : matchPair.getDeletedEntities()) {
+        List<DeclarationNodeTree> rowsBefore = new ArrayList<>(matchPair.getDeletedEntities());
+        List<EntityPair> entityPairs = scorePairs(rowsBefore.size(), row -> {
+            DeclarationNodeTree dntBefore = rowsBefore.get(row);
+            List<EntityPair> pairs = new ArrayList<>();
             for (DeclarationNodeTree dntCurrent : matchPair.getAddedEntities()) {
                 if (dntBefore.getType() == dntCurrent.getType()) {
                     double dice = 0;
@@ -752,21 +1007,24 @@ public class SoftwareEntityMatcherService {
                                 (((AbstractTypeDeclaration) dntBefore.getDeclaration()).getModifiers() & Modifier.PUBLIC) != 0 &&
                                 (((AbstractTypeDeclaration) dntCurrent.getDeclaration()).getModifiers() & Modifier.PUBLIC) != 0) {
                             EntityPair entityPair = new EntityPair(dntBefore, dntCurrent);
-                            entityPairs.add(entityPair);
+                            pairs.add(entityPair);
                             entityPair.setDice(1.0);
                             continue;
                         }
                         dice = DiceFunction.calculateDice(matchPair, (InternalNode) dntBefore, (InternalNode) dntCurrent);
                     } else if (dntBefore instanceof LeafNode && dntCurrent instanceof LeafNode) {
+                        if (DiceFunction.calculateDiceBound((LeafNode) dntBefore, (LeafNode) dntCurrent) <= 0.8)
+                            continue;
                         dice = DiceFunction.calculateDice((LeafNode) dntBefore, (LeafNode) dntCurrent);
                     }
                     if (dice <= 0.8) continue;
                     EntityPair entityPair = new EntityPair(dntBefore, dntCurrent);
-                    entityPairs.add(entityPair);
+                    pairs.add(entityPair);
                     entityPair.setDice(dice);
                 }
             }
-        }
+            return pairs;
+        });
         selectByDice(matchPair, deletionBefore, deletionCurrent, entityPairs);
     }
 
@@ -795,7 +1053,8 @@ public class SoftwareEntityMatcherService {
         for (Pair<DeclarationNodeTree, DeclarationNodeTree> pair : matchedEntities) {
             DeclarationNodeTree dntBefore = pair.getLeft();
             DeclarationNodeTree dntCurrent = pair.getRight();
-            if (dntBefore.getDeclaration().toString().equals(dntCurrent.getDeclaration().toString()) &&
+            if (dntBefore.getDeclarationHash() == dntCurrent.getDeclarationHash() &&
+                    dntBefore.getDeclaration().toString().equals(dntCurrent.getDeclaration().toString()) &&
                     StringUtils.equals(dntBefore.getNamespace(), dntCurrent.getNamespace())) {
                 filteredEntities.add(pair);
             }
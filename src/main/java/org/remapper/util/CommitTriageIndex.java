@@ -0,0 +1,114 @@
+package org.remapper.util;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.remapper.dto.CommitTriage;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On-disk index of {@link CommitTriage}s keyed by commit id, stored in the git directory of the repository.
+ * The triage depends on the path patterns selecting the changed files, so each set of patterns has its own file.
+ * The file is a header followed by fixed-size records and is only ever appended to, so a record cut short by an
+ * interrupted run is dropped when the index is read again.
+ */
+public class CommitTriageIndex {
+
+    private static final int MAGIC = 0x524D4354;
+    private static final int VERSION = 3;
+    private static final int RECORD_SIZE = Constants.OBJECT_ID_LENGTH + 4 * 4;
+
+    private final File file;
+    private final Map<ObjectId, CommitTriage> triages;
+    private final Map<ObjectId, CommitTriage> pendingTriages;
+    private boolean valid;
+
+    private CommitTriageIndex(File file) {
+        this.file = file;
+        this.triages = new HashMap<>();
+        this.pendingTriages = new LinkedHashMap<>();
+    }
+
+    /**
+     * @param pathPatternKey the key of the path patterns, see {@link org.remapper.service.GitService#getPathPatternKey}
+     */
+    public static CommitTriageIndex open(Repository repository, String pathPatternKey) throws IOException {
+        String name = pathPatternKey.isEmpty() ? "commit-triage.idx" :
+                "commit-triage-" + Long.toHexString(StringUtils.hash(pathPatternKey)) + ".idx";
+        CommitTriageIndex index = new CommitTriageIndex(new File(repository.getDirectory(), "remapper/" + name));
+        index.read();
+        return index;
+    }
+
+    private void read() throws IOException {
+        if (!file.isFile())
+            return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (file.length() < 8 || in.readInt() != MAGIC || in.readInt() != VERSION)
+                return;
+            valid = true;
+            long records = (file.length() - 8) / RECORD_SIZE;
+            byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+            for (long i = 0; i < records; i++) {
+                in.readFully(id);
+                CommitTriage triage = new CommitTriage(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                triages.put(ObjectId.fromRaw(id), triage);
+            }
+        }
+    }
+
+    public CommitTriage get(AnyObjectId commitId) {
+        return triages.get(commitId);
+    }
+
+    public void put(AnyObjectId commitId, CommitTriage triage) {
+        ObjectId id = commitId.copy();
+        if (triages.put(id, triage) == null)
+            pendingTriages.put(id, triage);
+    }
+
+    /**
+     * Appends the triages put since the index was opened or last saved. A missing or unreadable file is rewritten.
+     */
+    public void save() throws IOException {
+        if (valid && pendingTriages.isEmpty())
+            return;
+        File parent = file.getParentFile();
+        if (!parent.exists() && !parent.mkdirs())
+            throw new IOException("Cannot create directory " + parent);
+        if (valid) {
+            long length = file.length();
+            long truncated = length - (length - 8) % RECORD_SIZE;
+            if (truncated != length) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(truncated);
+                }
+            }
+        }
+        boolean append = valid;
+        Map<ObjectId, CommitTriage> records = append ? pendingTriages : triages;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)))) {
+            if (!append) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+            for (Map.Entry<ObjectId, CommitTriage> entry : records.entrySet()) {
+                CommitTriage triage = entry.getValue();
+                entry.getKey().copyRawTo(id, 0);
+                out.write(id);
+                out.writeInt(triage.getAddedFiles());
+                out.writeInt(triage.getDeletedFiles());
+                out.writeInt(triage.getModifiedFiles());
+                out.writeInt(triage.getRenamedFiles());
+            }
+        }
+        valid = true;
+        pendingTriages.clear();
+    }
+}
@@ -0,0 +1,209 @@
+package org.remapper.util;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jgit.lib.ObjectId;
+import org.remapper.dto.EntityInfo;
+import org.remapper.dto.RootNode;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of declaration node trees keyed by blob id, together with the dependencies extracted from the same
+ * compilation unit, bounded by an estimate of the retained bytes. The cached trees are never pruned; each consumer
+ * gets its own copy.
+ * A compilation unit with bindings keeps the lookup environment of the createASTs call it was resolved in alive,
+ * and with it the compiler ASTs of all units of that call, so the environment is charged once per call for as long
+ * as any of its trees is cached.
+ * Bindings depend on the sourcepath the file was parsed with, so a tree is only reused in the same environment
+ * and at the same path, which is the case for the "after" version of a file in one commit and the "before"
+ * version in the next one.
+ */
+public class DNTCache {
+
+    private static final DNTCache sharedCache = new DNTCache(256L * 1024 * 1024);
+
+    private static final int BYTES_PER_CHAR = 16;
+    private static final int BYTES_PER_CHAR_OF_ENVIRONMENT = 48;
+
+    private final LinkedHashMap<ObjectId, Entry> entries;
+    private final Map<Collection<CompilationUnit>, Batch> batches;
+    private long maxBytes;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public DNTCache(long maxBytes) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.batches = new IdentityHashMap<>();
+        this.maxBytes = maxBytes;
+    }
+
+    public static DNTCache getSharedCache() {
+        return sharedCache;
+    }
+
+    /**
+     * @param dependencies the cached dependencies are added to it on a hit, and must not be modified
+     * @return a copy of the cached tree, or null if the blob was not parsed in the same environment at the same path
+     */
+    public RootNode get(ObjectId blobId, String environment, String filePath, Map<EntityInfo, List<EntityInfo>> dependencies) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(blobId);
+            if (entry == null || !entry.environment.equals(environment) || !entry.filePath.equals(filePath)) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        dependencies.putAll(entry.dependencies);
+        return entry.dnt.copy(null);
+    }
+
+    /**
+     * @param dnt   a tree which has not been handed out, as it must stay unpruned
+     * @param batch the compilation units parsed together with the one of the tree, the same collection for all of them
+     */
+    public void put(ObjectId blobId, String environment, String filePath, RootNode dnt, Map<EntityInfo, List<EntityInfo>> dependencies,
+                    Collection<CompilationUnit> batch) {
+        Entry entry = new Entry(environment, filePath, dnt, dependencies,
+                dnt.getDeclaration().getAST().hasResolvedBindings() ? batch : null);
+        synchronized (this) {
+            if (entry.size + sizeOf(entry.batch) > maxBytes)
+                return;
+            Entry previous = entries.put(blobId.copy(), entry);
+            if (previous != null)
+                release(previous);
+            acquire(entry);
+            evict();
+        }
+    }
+
+    private void acquire(Entry entry) {
+        usedBytes += entry.size;
+        if (entry.batch == null)
+            return;
+        Batch batch = batches.get(entry.batch);
+        if (batch == null) {
+            batch = new Batch(sizeOf(entry.batch));
+            batches.put(entry.batch, batch);
+            usedBytes += batch.size;
+        }
+        batch.entries++;
+    }
+
+    private void release(Entry entry) {
+        usedBytes -= entry.size;
+        if (entry.batch == null)
+            return;
+        Batch batch = batches.get(entry.batch);
+        if (--batch.entries == 0) {
+            batches.remove(entry.batch);
+            usedBytes -= batch.size;
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            release(iterator.next());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * A tree keeps the whole AST of its compilation unit, so the estimate is a multiple of the source length.
+     */
+    private static long sizeOf(RootNode dnt) {
+        return (long) BYTES_PER_CHAR * lengthOf(dnt.getDeclaration());
+    }
+
+    /**
+     * The lookup environment holds the bindings and the compiler ASTs of all units of the batch.
+     */
+    private static long sizeOf(Collection<CompilationUnit> batch) {
+        if (batch == null)
+            return 0;
+        long length = 0;
+        for (CompilationUnit cu : batch)
+            length += lengthOf(cu);
+        return BYTES_PER_CHAR_OF_ENVIRONMENT * length;
+    }
+
+    private static int lengthOf(ASTNode cu) {
+        return cu.getStartPosition() + cu.getLength();
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        batches.clear();
+        usedBytes = 0;
+    }
+
+    private static class Entry {
+
+        private final String environment;
+        private final String filePath;
+        private final RootNode dnt;
+        private final Map<EntityInfo, List<EntityInfo>> dependencies;
+        private final Collection<CompilationUnit> batch;
+        private final long size;
+
+        private Entry(String environment, String filePath, RootNode dnt, Map<EntityInfo, List<EntityInfo>> dependencies,
+                      Collection<CompilationUnit> batch) {
+            this.environment = environment;
+            this.filePath = filePath;
+            this.dnt = dnt;
+            this.dependencies = dependencies;
+            this.batch = batch;
+            this.size = sizeOf(dnt);
+        }
+    }
+
+    private static class Batch {
+
+        private final long size;
+        private int entries;
+
+        private Batch(long size) {
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.remapper.util;
+
+import org.remapper.dto.DeclarationNodeTree;
+
+import java.util.*;
+
+/**
+ * Declaration nodes of one side looked up by their name keys, which finds the nodes {@link DeclarationNodeTree#equals}
+ * a node of the other side without comparing it to each of them. Nodes sharing a key are kept in their order.
+ * For a renamed file, the key of a node before depends on the package of the node it is compared to, so the nodes
+ * are indexed per package, which is the same for all nodes of a file unless its path and packages disagree.
+ */
+public class DeclarationIndex {
+
+    private final String filePath;
+    private final String renamedFilePath;
+    private final Map<String, Map<List<Object>, List<DeclarationNodeTree>>> indexes;
+    private final Map<DeclarationNodeTree, Integer> positions;
+
+    /**
+     * @param nodes nodes of the same file after the commit
+     */
+    public DeclarationIndex(List<DeclarationNodeTree> nodes) {
+        this(nodes, null, null);
+    }
+
+    /**
+     * @param nodes nodes of the renamed file after the commit
+     */
+    public DeclarationIndex(List<DeclarationNodeTree> nodes, String filePath, String renamedFilePath) {
+        this.filePath = filePath;
+        this.renamedFilePath = renamedFilePath;
+        this.indexes = new LinkedHashMap<>();
+        this.positions = new IdentityHashMap<>();
+        Map<String, String> filePackages = new HashMap<>();
+        for (DeclarationNodeTree node : nodes) {
+            String renamedFilePackage = renamedFilePath == null ? "" : filePackages.computeIfAbsent(node.getNamespace(),
+                    namespace -> DeclarationNodeTree.getFilePackage(renamedFilePath, namespace));
+            indexes.computeIfAbsent(renamedFilePackage, key -> new HashMap<>())
+                    .computeIfAbsent(node.getNameKey(), key -> new ArrayList<>()).add(node);
+            positions.put(node, positions.size());
+        }
+    }
+
+    /**
+     * @return the indexed nodes the node equals, in their order
+     */
+    public List<DeclarationNodeTree> getCounterparts(DeclarationNodeTree node) {
+        if (renamedFilePath == null)
+            return indexes.isEmpty() ? Collections.emptyList() :
+                    indexes.get("").getOrDefault(node.getNameKey(), Collections.emptyList());
+        String filePackage = DeclarationNodeTree.getFilePackage(filePath, node.getNamespace());
+        List<DeclarationNodeTree> counterparts = new ArrayList<>();
+        for (Map.Entry<String, Map<List<Object>, List<DeclarationNodeTree>>> entry : indexes.entrySet()) {
+            List<Object> key = node.getRenamedNameKey(filePath, filePackage, renamedFilePath, entry.getKey());
+            counterparts.addAll(entry.getValue().getOrDefault(key, Collections.emptyList()));
+        }
+        if (indexes.size() > 1)
+            counterparts.sort(Comparator.comparingInt(positions::get));
+        return counterparts;
+    }
+}
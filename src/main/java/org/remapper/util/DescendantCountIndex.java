@@ -0,0 +1,74 @@
+package org.remapper.util;
+
+import org.remapper.dto.LeafNode;
+import org.remapper.service.JDTService;
+
+import java.util.*;
+
+/**
+ * Leaf nodes sorted by their numbers of descendants. The Dice coefficient of two leaf nodes with a and b descendants
+ * is at most 2 min(a, b) / (a + b), so only those with b in [a t / (2 - t), a (2 - t) / t] can reach a threshold t.
+ * The window is widened by one on both sides against rounding, and the pairs in it still have to be checked with
+ * {@link DiceFunction#calculateDiceBound}, which makes the candidates the same as those of all pairs.
+ */
+public class DescendantCountIndex {
+
+    private final List<LeafNode> nodes;
+    private final int[] counts;
+    private final int[] positions;
+
+    public DescendantCountIndex(List<LeafNode> nodes) {
+        JDTService jdtService = new JDTServiceImpl();
+        this.nodes = nodes;
+        Integer[] order = new Integer[nodes.size()];
+        int[] sizes = new int[nodes.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            sizes[i] = nodes.get(i).getDescendants(jdtService).size();
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> sizes[i]));
+        this.counts = new int[order.length];
+        this.positions = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            counts[i] = sizes[order[i]];
+            positions[i] = order[i];
+        }
+    }
+
+    /**
+     * @return the nodes whose numbers of descendants may reach the threshold with the node, in their order
+     */
+    public List<LeafNode> getCandidates(LeafNode node, double threshold) {
+        if (threshold <= 0 || !DiceFunction.isBoundsEnabled())
+            return nodes;
+        if (threshold > 1)
+            return Collections.emptyList();
+        long count = node.getDescendants(new JDTServiceImpl()).size();
+        long min = (long) Math.ceil(count * threshold / (2 - threshold)) - 1;
+        long max = (long) Math.floor(count * (2 - threshold) / threshold) + 1;
+        int from = lowerBound(min);
+        int to = lowerBound(max + 1);
+        int[] window = Arrays.copyOfRange(positions, from, to);
+        Arrays.sort(window);
+        List<LeafNode> candidates = new ArrayList<>(window.length);
+        for (int position : window)
+            candidates.add(nodes.get(position));
+        return candidates;
+    }
+
+    /**
+     * @return the index of the first count not less than the value
+     */
+    private int lowerBound(long value) {
+        int low = 0;
+        int high = counts.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (counts[middle] < value)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
@@ -18,6 +18,20 @@ public class DiceFunction {
 
     public static double minSimilarity = 1.0;
 
+    private static volatile boolean boundsEnabled = true;
+
+    /**
+     * Without the bounds, {@link #calculateDiceBound} and {@link #calculateSimilarityBound} never rule a pair out and
+     * {@link DescendantCountIndex} returns all nodes, so that every pair is scored.
+     */
+    public static void setBoundsEnabled(boolean enabled) {
+        DiceFunction.boundsEnabled = enabled;
+    }
+
+    public static boolean isBoundsEnabled() {
+        return boundsEnabled;
+    }
+
     public static double calculateDice(LeafNode leafBefore, LeafNode leafCurrent) {
         JDTService jdtService = new JDTServiceImpl();
         List<ChildNode> list1 = leafBefore.getDescendants(jdtService);
@@ -39,6 +53,22 @@ public class DiceFunction {
         return union == 0 ? 0 : 2.0 * intersection / union;
     }
 
+    /**
+     * Each descendant is matched at most once, so the coefficient of {@link #calculateDice(LeafNode, LeafNode)}
+     * cannot exceed the one of the smaller list matching completely.
+     *
+     * @return an upper bound of the coefficient computed from the numbers of descendants alone
+     */
+    public static double calculateDiceBound(LeafNode leafBefore, LeafNode leafCurrent) {
+        if (!boundsEnabled)
+            return Double.POSITIVE_INFINITY;
+        JDTService jdtService = new JDTServiceImpl();
+        int size1 = leafBefore.getDescendants(jdtService).size();
+        int size2 = leafCurrent.getDescendants(jdtService).size();
+        int union = size1 + size2;
+        return union == 0 ? 0 : 2.0 * Math.min(size1, size2) / union;
+    }
+
     public static double calculateDice(MatchPair matchPair, InternalNode internalBefore, InternalNode internalCurrent) {
         List<DeclarationNodeTree> list1 = internalBefore.getDescendants();
         List<DeclarationNodeTree> list2 = internalCurrent.getDescendants();
@@ -145,6 +175,23 @@ public class DiceFunction {
         return dependencies;
     }
 
+    /**
+     * The coefficient of the descendants of leaf nodes is bounded by {@link #calculateDiceBound}, that of internal
+     * nodes is not, as a descendant may be paired more than once. The reference coefficient counts each dependency
+     * before at most once, which keeps it below 2, and the bigram similarity is at most 1.
+     *
+     * @return an upper bound of {@link #calculateSimilarity(MatchPair, DeclarationNodeTree, DeclarationNodeTree)}
+     */
+    public static double calculateSimilarityBound(DeclarationNodeTree dntBefore, DeclarationNodeTree dntCurrent) {
+        double descendants = 0.0;
+        if (!boundsEnabled || dntBefore instanceof InternalNode && dntCurrent instanceof InternalNode)
+            return Double.POSITIVE_INFINITY;
+        else if (dntBefore instanceof LeafNode && dntCurrent instanceof LeafNode)
+            descendants = calculateDiceBound((LeafNode) dntBefore, (LeafNode) dntCurrent);
+        int union = dntBefore.getDependencies().size() + dntCurrent.getDependencies().size();
+        return (union == 0 ? descendants : 0.5 * descendants + 0.5 * 2.0) + 0.01;
+    }
+
     public static double calculateSimilarity(MatchPair matchPair, DeclarationNodeTree dntBefore, DeclarationNodeTree dntCurrent) {
         double descendants = 0.0;
         if (dntBefore instanceof InternalNode && dntCurrent instanceof InternalNode)
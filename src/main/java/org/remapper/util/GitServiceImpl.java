@@ -8,6 +8,8 @@ import org.eclipse.jgit.api.errors.CanceledException;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
@@ -18,49 +20,144 @@ import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.remapper.dto.CommitTriage;
+import org.remapper.dto.RenameStrategy;
 import org.remapper.service.GitService;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 public class GitServiceImpl implements GitService {
 
+    private boolean javaRenameDetection;
+    private final List<String> includePatterns = new ArrayList<>();
+    private final List<String> excludePatterns = new ArrayList<>();
+
+    /**
+     * @param javaRenameDetection pair deleted and added Java files with {@link JavaRenameDetector} before the
+     *                            content similarity of the remaining files is scored
+     */
+    public void setJavaRenameDetection(boolean javaRenameDetection) {
+        this.javaRenameDetection = javaRenameDetection;
+    }
+
+    /**
+     * @param includePatterns globs of the changed files to match, all Java files if empty
+     */
+    public void setIncludePatterns(Collection<String> includePatterns) {
+        this.includePatterns.clear();
+        this.includePatterns.addAll(includePatterns);
+    }
+
+    /**
+     * @param excludePatterns globs of the files and directories that are never diffed, see {@link PathGlobFilter}
+     */
+    public void setExcludePatterns(Collection<String> excludePatterns) {
+        this.excludePatterns.clear();
+        this.excludePatterns.addAll(excludePatterns);
+    }
+
+    /**
+     * Only the changed Java files which pass the include and exclude globs are walked, so other files
+     * never take part in the diff or in rename detection.
+     */
+    private TreeFilter getChangedJavaFileFilter() {
+        TreeFilter javaFilter = PathSuffixFilter.create(".java");
+        TreeFilter globFilter = PathGlobFilter.create(includePatterns, excludePatterns);
+        if (globFilter == TreeFilter.ALL)
+            return AndTreeFilter.create(TreeFilter.ANY_DIFF, javaFilter);
+        return AndTreeFilter.create(new TreeFilter[]{TreeFilter.ANY_DIFF, globFilter, javaFilter});
+    }
+
     @Override
     public void fileTreeDiff(Repository repository, RevCommit currentCommit, Set<String> addedFiles, Set<String> deletedFiles,
                              Set<String> modifiedFiles, Map<String, String> renamedFiles) throws IOException, CanceledException {
+        fileTreeDiff(repository, currentCommit, addedFiles, deletedFiles, modifiedFiles, renamedFiles, new HashMap<>(),
+                new HashMap<>(), new HashMap<>());
+    }
+
+    @Override
+    public void fileTreeDiff(Repository repository, RevCommit currentCommit, Set<String> addedFiles, Set<String> deletedFiles,
+                             Set<String> modifiedFiles, Map<String, String> renamedFiles, Map<String, ObjectId> objectIdsBefore,
+                             Map<String, ObjectId> objectIdsCurrent, Map<String, RenameStrategy> renameStrategies)
+            throws IOException, CanceledException {
         if (currentCommit.getParentCount() > 0) {
             ObjectId oldTree = currentCommit.getParent(0).getTree();
             ObjectId newTree = currentCommit.getTree();
-            final TreeWalk tw = new TreeWalk(repository);
-            tw.setRecursive(true);
-            tw.addTree(oldTree);
-            tw.addTree(newTree);
-            RenameDetector rd = new RenameDetector(repository);
-            rd.addAll(DiffEntry.scan(tw));
-            for (DiffEntry diff : rd.compute(tw.getObjectReader(), null)) {
-                DiffEntry.ChangeType changeType = diff.getChangeType();
-                String oldPath = diff.getOldPath();
-                String newPath = diff.getNewPath();
-                if (changeType == DiffEntry.ChangeType.ADD) {
-                    if (isJavaFile(newPath))
-                        addedFiles.add(newPath);
-                } else if (changeType == DiffEntry.ChangeType.DELETE) {
-                    if (isJavaFile(oldPath))
-                        deletedFiles.add(oldPath);
-                } else if (changeType == DiffEntry.ChangeType.MODIFY) {
-                    if (isJavaFile(oldPath) && isJavaFile(newPath))
-                        modifiedFiles.add(oldPath);
-                } else if (changeType == DiffEntry.ChangeType.RENAME) {
-                    if (isJavaFile(oldPath) && isJavaFile(newPath))
-                        renamedFiles.put(oldPath, newPath);
-                } else if (changeType == DiffEntry.ChangeType.COPY) {
-                    if (isJavaFile(newPath))
-                        addedFiles.add(newPath);
+            try (TreeWalk tw = new TreeWalk(repository)) {
+                tw.setRecursive(true);
+                tw.addTree(oldTree);
+                tw.addTree(newTree);
+                tw.setFilter(getChangedJavaFileFilter());
+                List<DiffEntry> diffs;
+                Map<String, RenameStrategy> strategies = new HashMap<>();
+                if (javaRenameDetection) {
+                    JavaRenameDetector jrd = new JavaRenameDetector(repository, tw.getObjectReader());
+                    jrd.addAll(DiffEntry.scan(tw));
+                    diffs = jrd.compute();
+                    strategies.putAll(jrd.getRenameStrategies());
+                } else {
+                    RenameDetector rd = new RenameDetector(repository);
+                    rd.addAll(DiffEntry.scan(tw));
+                    diffs = rd.compute(tw.getObjectReader(), null);
+                }
+                populateChangedFiles(diffs, strategies, addedFiles, deletedFiles, modifiedFiles, renamedFiles,
+                        objectIdsBefore, objectIdsCurrent, renameStrategies);
+            }
+        }
+    }
+
+    private void populateChangedFiles(List<DiffEntry> diffs, Map<String, RenameStrategy> strategies, Set<String> addedFiles,
+                                      Set<String> deletedFiles, Set<String> modifiedFiles, Map<String, String> renamedFiles,
+                                      Map<String, ObjectId> objectIdsBefore, Map<String, ObjectId> objectIdsCurrent,
+                                      Map<String, RenameStrategy> renameStrategies) {
+        for (DiffEntry diff : diffs) {
+            DiffEntry.ChangeType changeType = diff.getChangeType();
+            String oldPath = diff.getOldPath();
+            String newPath = diff.getNewPath();
+            if (changeType == DiffEntry.ChangeType.ADD) {
+                if (isJavaFile(newPath)) {
+                    addedFiles.add(newPath);
+                    objectIdsCurrent.put(newPath, diff.getNewId().toObjectId());
+                }
+            } else if (changeType == DiffEntry.ChangeType.DELETE) {
+                if (isJavaFile(oldPath)) {
+                    deletedFiles.add(oldPath);
+                    objectIdsBefore.put(oldPath, diff.getOldId().toObjectId());
+                }
+            } else if (changeType == DiffEntry.ChangeType.MODIFY) {
+                if (isJavaFile(oldPath) && isJavaFile(newPath)) {
+                    modifiedFiles.add(oldPath);
+                    objectIdsBefore.put(oldPath, diff.getOldId().toObjectId());
+                    objectIdsCurrent.put(newPath, diff.getNewId().toObjectId());
+                }
+            } else if (changeType == DiffEntry.ChangeType.RENAME) {
+                if (isJavaFile(oldPath) && isJavaFile(newPath)) {
+                    renamedFiles.put(oldPath, newPath);
+                    renameStrategies.put(newPath, strategies.getOrDefault(newPath, RenameStrategy.CONTENT_SIMILARITY));
+                    objectIdsBefore.put(oldPath, diff.getOldId().toObjectId());
+                    objectIdsCurrent.put(newPath, diff.getNewId().toObjectId());
+                }
+            } else if (changeType == DiffEntry.ChangeType.COPY) {
+                if (isJavaFile(newPath)) {
+                    addedFiles.add(newPath);
+                    objectIdsCurrent.put(newPath, diff.getNewId().toObjectId());
                 }
             }
         }
@@ -132,6 +229,55 @@ public class GitServiceImpl implements GitService {
         }
     }
 
+    /**
+     * Brings the Java sources under the paths in the directory from baseTree to the tree of the commit by rewriting
+     * only the files that differ; a null baseTree means the directory holds none of them.
+     */
+    @Override
+    public void updateJavaSources(Repository repository, ObjectId baseTree, RevCommit commit, Set<String> paths,
+                                  File directory) throws IOException {
+        if (paths.isEmpty())
+            return;
+        List<String> pathStrings = new ArrayList<>();
+        for (String path : paths) {
+            String pathString = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+            if (pathString.isEmpty()) {
+                pathStrings.clear();
+                break;
+            }
+            pathStrings.add(pathString);
+        }
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            if (baseTree == null)
+                treeWalk.addTree(new EmptyTreeIterator());
+            else
+                treeWalk.addTree(baseTree);
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+            TreeFilter javaFilter = AndTreeFilter.create(TreeFilter.ANY_DIFF, PathSuffixFilter.create(".java"));
+            treeWalk.setFilter(pathStrings.isEmpty() ? javaFilter :
+                    AndTreeFilter.create(PathFilterGroup.createFromStrings(pathStrings), javaFilter));
+            ObjectReader reader = treeWalk.getObjectReader();
+            while (treeWalk.next()) {
+                File file = new File(directory, treeWalk.getPathString());
+                FileMode fileMode = treeWalk.getFileMode(1);
+                if (fileMode == FileMode.REGULAR_FILE || fileMode == FileMode.EXECUTABLE_FILE)
+                    writeBlob(reader, treeWalk.getObjectId(1), file);
+                else
+                    Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    private void writeBlob(ObjectReader reader, ObjectId blobId, File file) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.exists() && !parent.mkdirs())
+            throw new IOException("Cannot create directory " + parent);
+        try (OutputStream out = new FileOutputStream(file)) {
+            reader.open(blobId).copyTo(out);
+        }
+    }
+
     private RevCommit getRevCommit(Repository repository, String commitId) throws IOException {
         try (RevWalk walk = new RevWalk(repository)) {
             RevCommit commit = walk.parseCommit(repository.resolve(commitId));
@@ -151,6 +297,18 @@ public class GitServiceImpl implements GitService {
         }
     }
 
+    /**
+     * @return the non-merge commits reachable from endCommitId but not from startCommitId
+     */
+    @Override
+    public Iterable<RevCommit> getCommitsBetween(Repository repository, String startCommitId, String endCommitId) throws GitAPIException, IOException {
+        try (Git git = new Git(repository)) {
+            LogCommand log = git.log().setRevFilter(RevFilter.NO_MERGES)
+                    .addRange(repository.resolve(startCommitId), repository.resolve(endCommitId));
+            return log.call();
+        }
+    }
+
     @Override
     public boolean containJavaChange(Repository repository, RevCommit currentCommit) throws GitAPIException, IOException {
         if (currentCommit.getParentCount() > 0) {
@@ -162,7 +320,8 @@ public class GitServiceImpl implements GitService {
                 CanonicalTreeParser newTreeIter = new CanonicalTreeParser();
                 newTreeIter.reset(reader, newTree);
                 try (Git git = new Git(repository)) {
-                    List<DiffEntry> diffs = git.diff().setNewTree(newTreeIter).setOldTree(oldTreeIter).call();
+                    List<DiffEntry> diffs = git.diff().setNewTree(newTreeIter).setOldTree(oldTreeIter)
+                            .setPathFilter(getChangedJavaFileFilter()).call();
                     boolean deleted = false;
                     boolean added = false;
                     for (DiffEntry diff : diffs) {
@@ -181,6 +340,64 @@ public class GitServiceImpl implements GitService {
         return false;
     }
 
+    /**
+     * Counts the changed Java files by comparing the trees of the commit and its parent. No blob is read, so a file is
+     * counted as renamed only if a deleted file has the same blob id.
+     */
+    @Override
+    public CommitTriage triageCommit(Repository repository, RevCommit currentCommit) throws IOException {
+        try (RevWalk walk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(repository)) {
+            RevCommit commit = walk.parseCommit(currentCommit);
+            if (commit.getParentCount() == 0)
+                return new CommitTriage(0, 0, 0, 0);
+            RevCommit parent = walk.parseCommit(commit.getParent(0));
+            treeWalk.addTree(parent.getTree());
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(getChangedJavaFileFilter());
+            Map<ObjectId, Integer> deletedBlobs = new HashMap<>();
+            List<ObjectId> addedBlobs = new ArrayList<>();
+            int deletedFiles = 0;
+            int modifiedFiles = 0;
+            while (treeWalk.next()) {
+                boolean before = isBlob(treeWalk.getFileMode(0));
+                boolean current = isBlob(treeWalk.getFileMode(1));
+                if (before && current) {
+                    modifiedFiles++;
+                } else if (before) {
+                    deletedBlobs.merge(treeWalk.getObjectId(0), 1, Integer::sum);
+                    deletedFiles++;
+                } else if (current) {
+                    addedBlobs.add(treeWalk.getObjectId(1));
+                }
+            }
+            int renamedFiles = 0;
+            for (ObjectId blobId : addedBlobs) {
+                Integer count = deletedBlobs.get(blobId);
+                if (count != null && count > 0) {
+                    deletedBlobs.put(blobId, count - 1);
+                    renamedFiles++;
+                }
+            }
+            return new CommitTriage(addedBlobs.size() - renamedFiles, deletedFiles - renamedFiles, modifiedFiles,
+                    renamedFiles);
+        }
+    }
+
+    @Override
+    public String getPathPatternKey() {
+        if (includePatterns.isEmpty() && excludePatterns.isEmpty())
+            return "";
+        return "include:" + String.join("\n", includePatterns) + "\nexclude:" + String.join("\n", excludePatterns);
+    }
+
+    /**
+     * Symbolic links are blobs as well and are diffed like files by {@link #containJavaChange}.
+     */
+    private boolean isBlob(FileMode fileMode) {
+        return fileMode.getObjectType() == Constants.OBJ_BLOB;
+    }
+
     public static String getRemoteUrl(String projectPath) throws IOException, GitAPIException {
         if (dotGitFound(projectPath))
             try (Git git = Git.open(new File(projectPath))) {
@@ -12,14 +12,32 @@ import java.util.stream.Collectors;
 
 public class JDTServiceImpl implements JDTService {
 
+    private final ParserEnvironment environment;
+
+    public JDTServiceImpl() {
+        this(ParserEnvironment.getDefault());
+    }
+
+    public JDTServiceImpl(ParserEnvironment environment) {
+        this.environment = environment;
+    }
+
     /**
      * parse CompilationUnit without binding method
      */
     @Override
     public RootNode parseFileDNT(String filePath, String fileContent) {
-        ASTParser parser = ASTParserUtils.getASTParser();
+        ASTParser parser = environment.getASTParser();
         parser.setSource(fileContent.toCharArray());
         CompilationUnit cu = (CompilationUnit) parser.createAST(null);
+        return parseFileDNT(filePath, cu);
+    }
+
+    /**
+     * build the declaration node tree of an already parsed CompilationUnit
+     */
+    @Override
+    public RootNode parseFileDNT(String filePath, CompilationUnit cu) {
         PackageDeclaration packageDeclaration = cu.getPackage();
         String container = packageDeclaration != null ? packageDeclaration.getName().getFullyQualifiedName() : "";
         RootNode rootNode = new RootNode(cu, filePath, cu);
@@ -69,9 +87,33 @@ public class JDTServiceImpl implements JDTService {
                 }
             }
         }
+        populateDeclarationHashes(rootNode);
         return rootNode;
     }
 
+    /**
+     * Hashes the declarations of all nodes in one pass over the compilation unit, once their Javadoc is removed.
+     * The single fragment copies of field declarations are not part of it and are hashed on their own.
+     */
+    private void populateDeclarationHashes(RootNode rootNode) {
+        List<DeclarationNodeTree> nodes = new ArrayList<>();
+        populateNodes(rootNode, nodes);
+        Map<ASTNode, Long> hashes = new IdentityHashMap<>();
+        for (DeclarationNodeTree node : nodes)
+            hashes.put(node.getDeclaration(), null);
+        StructuralHash.hash(rootNode.getDeclaration(), hashes);
+        for (DeclarationNodeTree node : nodes) {
+            Long hash = hashes.get(node.getDeclaration());
+            node.setDeclarationHash(hash != null ? hash : StructuralHash.hash(node.getDeclaration()));
+        }
+    }
+
+    private void populateNodes(DeclarationNodeTree node, List<DeclarationNodeTree> nodes) {
+        nodes.add(node);
+        for (DeclarationNodeTree child : node.getChildren())
+            populateNodes(child, nodes);
+    }
+
     /**
      * breadth-first search
      */
@@ -0,0 +1,81 @@
+package org.remapper.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.remapper.dto.EntityMatchingJSON;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Appends results to the "results" array of a JSON file as they come in, so that the results written so far
+ * survive a crash. The file is a complete JSON document after every write: the closing brackets are written after
+ * each result and overwritten by the next one. The results already in the file are kept.
+ */
+public class JSONResultWriter implements Closeable {
+
+    private static final String HEADER = "{\n  \"results\": [";
+    private static final String FOOTER = "\n  ]\n}";
+    private static final String EMPTY = "{\n  \"results\": []\n}";
+
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
+    private final RandomAccessFile file;
+    private long end;
+    private int results;
+
+    public JSONResultWriter(Path path) throws IOException {
+        JsonArray previousResults = readResults(path);
+        Path parent = path.toAbsolutePath().getParent();
+        if (Files.notExists(parent))
+            Files.createDirectories(parent);
+        file = new RandomAccessFile(path.toFile(), "rw");
+        file.setLength(0);
+        write(EMPTY);
+        end = HEADER.length();
+        for (JsonElement result : previousResults)
+            append(result);
+    }
+
+    private JsonArray readResults(Path path) throws IOException {
+        if (Files.notExists(path) || Files.size(path) == 0)
+            return new JsonArray();
+        String json = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        JsonObject object = JsonParser.parseString(json).getAsJsonObject();
+        return object.has("results") ? object.getAsJsonArray("results") : new JsonArray();
+    }
+
+    /**
+     * Appends the results of the given JSON, which is usually populated with those of a single commit.
+     */
+    public synchronized void write(EntityMatchingJSON json) throws IOException {
+        for (JsonElement result : gson.toJsonTree(json).getAsJsonObject().getAsJsonArray("results"))
+            append(result);
+    }
+
+    private void append(JsonElement result) throws IOException {
+        String item = (results == 0 ? "\n" : ",\n") + gson.toJson(result).replace("\\t", "\t").replaceAll("(?m)^", "    ");
+        file.seek(end);
+        write(item);
+        end = file.getFilePointer();
+        write(FOOTER);
+        file.setLength(file.getFilePointer());
+        results++;
+    }
+
+    private void write(String text) throws IOException {
+        file.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,218 @@
+package org.remapper.util;
+
+import org.eclipse.jgit.api.errors.CanceledException;
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.remapper.dto.RenameStrategy;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Pairs deleted and added Java files by blob identity, top-level type name and package suffix before any content
+ * scoring. Each candidate pair is confirmed by scoring that single pair, and only the leftovers are handed to the
+ * all-pairs {@link RenameDetector}.
+ */
+public class JavaRenameDetector {
+
+    private final ObjectReader reader;
+    private final DiffConfig diffConfig;
+    private final List<DiffEntry> entries;
+    private final Map<String, RenameStrategy> renameStrategies;
+
+    public JavaRenameDetector(Repository repository, ObjectReader reader) {
+        this.reader = reader;
+        this.diffConfig = repository.getConfig().get(DiffConfig.KEY);
+        this.entries = new ArrayList<>();
+        this.renameStrategies = new LinkedHashMap<>();
+    }
+
+    public void addAll(Collection<DiffEntry> entries) {
+        this.entries.addAll(entries);
+    }
+
+    /**
+     * @return the strategy that paired each renamed or copied file, keyed by its new path
+     */
+    public Map<String, RenameStrategy> getRenameStrategies() {
+        return renameStrategies;
+    }
+
+    public List<DiffEntry> compute() throws IOException, CanceledException {
+        List<DiffEntry> deleted = new ArrayList<>();
+        List<DiffEntry> added = new ArrayList<>();
+        List<DiffEntry> leftovers = new ArrayList<>();
+        for (DiffEntry entry : entries) {
+            if (entry.getChangeType() == DiffEntry.ChangeType.DELETE && isJavaFile(entry.getOldPath()))
+                deleted.add(entry);
+            else if (entry.getChangeType() == DiffEntry.ChangeType.ADD && isJavaFile(entry.getNewPath()))
+                added.add(entry);
+            else
+                leftovers.add(entry);
+        }
+        Map<DiffEntry, DiffEntry> candidates = new LinkedHashMap<>();
+        Map<DiffEntry, RenameStrategy> strategies = new HashMap<>();
+        pairByBlobIdentity(deleted, added, candidates, strategies);
+        pairByTypeName(deleted, added, candidates, strategies);
+        leftovers.addAll(deleted);
+        leftovers.addAll(added);
+
+        List<DiffEntry> result = new ArrayList<>();
+        RenameDetector pairDetector = new RenameDetector(reader, diffConfig);
+        for (DiffEntry deletion : candidates.keySet()) {
+            DiffEntry addition = candidates.get(deletion);
+            pairDetector.reset();
+            pairDetector.add(deletion);
+            pairDetector.add(addition);
+            List<DiffEntry> paired = pairDetector.compute(reader, null);
+            if (paired.size() == 1 && paired.get(0).getChangeType() == DiffEntry.ChangeType.RENAME) {
+                result.add(paired.get(0));
+                renameStrategies.put(addition.getNewPath(), strategies.get(deletion));
+            } else {
+                leftovers.add(deletion);
+                leftovers.add(addition);
+            }
+        }
+        RenameDetector detector = new RenameDetector(reader, diffConfig);
+        detector.addAll(leftovers);
+        for (DiffEntry entry : detector.compute(reader, null)) {
+            if (entry.getChangeType() == DiffEntry.ChangeType.RENAME || entry.getChangeType() == DiffEntry.ChangeType.COPY)
+                renameStrategies.put(entry.getNewPath(), RenameStrategy.CONTENT_SIMILARITY);
+            result.add(entry);
+        }
+        result.sort(JavaRenameDetector::compare);
+        return result;
+    }
+
+    private void pairByBlobIdentity(List<DiffEntry> deleted, List<DiffEntry> added, Map<DiffEntry, DiffEntry> candidates,
+                                    Map<DiffEntry, RenameStrategy> strategies) {
+        Map<AbbreviatedObjectId, List<DiffEntry>> addedByBlob = new HashMap<>();
+        for (DiffEntry addition : added)
+            addedByBlob.computeIfAbsent(addition.getNewId(), id -> new ArrayList<>()).add(addition);
+        for (DiffEntry deletion : new ArrayList<>(deleted)) {
+            List<DiffEntry> identical = addedByBlob.get(deletion.getOldId());
+            if (identical == null || identical.isEmpty())
+                continue;
+            DiffEntry addition = identical.get(0);
+            int bestScore = -1;
+            for (DiffEntry entry : identical) {
+                int score = (fileName(deletion.getOldPath()).equals(fileName(entry.getNewPath())) ? 1000 : 0) +
+                        commonSuffixLength(deletion.getOldPath(), entry.getNewPath());
+                if (score > bestScore) {
+                    bestScore = score;
+                    addition = entry;
+                }
+            }
+            identical.remove(addition);
+            deleted.remove(deletion);
+            added.remove(addition);
+            candidates.put(deletion, addition);
+            strategies.put(deletion, RenameStrategy.BLOB_IDENTITY);
+        }
+    }
+
+    /**
+     * A file whose type name is unique on both sides is paired by name. Otherwise a deleted and an added file are
+     * paired when each is the other's only best match by the number of trailing directories (package segments)
+     * they share.
+     */
+    private void pairByTypeName(List<DiffEntry> deleted, List<DiffEntry> added, Map<DiffEntry, DiffEntry> candidates,
+                                Map<DiffEntry, RenameStrategy> strategies) {
+        Map<String, List<DiffEntry>> deletedByName = new LinkedHashMap<>();
+        for (DiffEntry deletion : deleted)
+            deletedByName.computeIfAbsent(fileName(deletion.getOldPath()), name -> new ArrayList<>()).add(deletion);
+        Map<String, List<DiffEntry>> addedByName = new HashMap<>();
+        for (DiffEntry addition : added)
+            addedByName.computeIfAbsent(fileName(addition.getNewPath()), name -> new ArrayList<>()).add(addition);
+        for (String name : deletedByName.keySet()) {
+            List<DiffEntry> deletions = deletedByName.get(name);
+            List<DiffEntry> additions = addedByName.get(name);
+            if (additions == null)
+                continue;
+            if (deletions.size() == 1 && additions.size() == 1) {
+                pair(deletions.get(0), additions.get(0), RenameStrategy.TYPE_NAME, deleted, added, candidates, strategies);
+                continue;
+            }
+            for (DiffEntry deletion : deletions) {
+                DiffEntry addition = uniqueBest(deletion.getOldPath(), additions, false);
+                if (addition == null || uniqueBest(addition.getNewPath(), deletions, true) != deletion)
+                    continue;
+                pair(deletion, addition, RenameStrategy.PACKAGE_SUFFIX, deleted, added, candidates, strategies);
+            }
+        }
+    }
+
+    private void pair(DiffEntry deletion, DiffEntry addition, RenameStrategy strategy, List<DiffEntry> deleted,
+                      List<DiffEntry> added, Map<DiffEntry, DiffEntry> candidates, Map<DiffEntry, RenameStrategy> strategies) {
+        deleted.remove(deletion);
+        added.remove(addition);
+        candidates.put(deletion, addition);
+        strategies.put(deletion, strategy);
+    }
+
+    private DiffEntry uniqueBest(String path, List<DiffEntry> entries, boolean oldSide) {
+        DiffEntry best = null;
+        int bestLength = 0;
+        boolean unique = false;
+        for (DiffEntry entry : entries) {
+            int length = commonSuffixLength(path, oldSide ? entry.getOldPath() : entry.getNewPath());
+            if (length > bestLength) {
+                best = entry;
+                bestLength = length;
+                unique = true;
+            } else if (length == bestLength) {
+                unique = false;
+            }
+        }
+        return unique ? best : null;
+    }
+
+    private static int commonSuffixLength(String path1, String path2) {
+        String[] directories1 = path1.split("/");
+        String[] directories2 = path2.split("/");
+        int length = 0;
+        for (int i = directories1.length - 2, j = directories2.length - 2; i >= 0 && j >= 0; i--, j--) {
+            if (!directories1[i].equals(directories2[j]))
+                break;
+            length++;
+        }
+        return length;
+    }
+
+    private static String fileName(String path) {
+        return path.substring(path.lastIndexOf("/") + 1);
+    }
+
+    private static boolean isJavaFile(String path) {
+        return path.endsWith(".java");
+    }
+
+    /**
+     * same order as the entries returned by {@link RenameDetector}
+     */
+    private static int compare(DiffEntry a, DiffEntry b) {
+        int cmp = nameOf(a).compareTo(nameOf(b));
+        if (cmp == 0)
+            cmp = sortOf(a.getChangeType()) - sortOf(b.getChangeType());
+        return cmp;
+    }
+
+    private static String nameOf(DiffEntry entry) {
+        return entry.getChangeType() == DiffEntry.ChangeType.DELETE ? entry.getOldPath() : entry.getNewPath();
+    }
+
+    private static int sortOf(DiffEntry.ChangeType changeType) {
+        switch (changeType) {
+            case DELETE:
+                return 1;
+            case ADD:
+                return 2;
+            default:
+                return 10;
+        }
+    }
+}
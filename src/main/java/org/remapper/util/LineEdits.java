@@ -0,0 +1,60 @@
+package org.remapper.util;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Line edits between two versions of a file, computed with the histogram diff of JGit. Lines which no edit
+ * touches are copied verbatim to the other version, shifted by the lines inserted and deleted before them.
+ * Lines are 0-based.
+ */
+public class LineEdits {
+
+    private final EditList edits;
+
+    public LineEdits(String before, String after) {
+        RawText a = new RawText(before.getBytes(StandardCharsets.UTF_8));
+        RawText b = new RawText(after.getBytes(StandardCharsets.UTF_8));
+        this.edits = DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM).diff(RawTextComparator.DEFAULT, a, b);
+    }
+
+    public EditList getEdits() {
+        return edits;
+    }
+
+    /**
+     * @return true if the lines from startLine to endLine of the before version are neither edited nor
+     * separated by inserted lines
+     */
+    public boolean isUntouched(int startLine, int endLine) {
+        for (Edit edit : edits) {
+            if (edit.getBeginA() > endLine)
+                break;
+            if (edit.getBeginA() == edit.getEndA()) {
+                if (edit.getBeginA() > startLine)
+                    return false;
+            } else if (edit.getEndA() > startLine) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the line of the after version an untouched line of the before version is copied to
+     */
+    public int mapLine(int line) {
+        int delta = 0;
+        for (Edit edit : edits) {
+            if (edit.getBeginA() > line)
+                break;
+            delta += edit.getLengthB() - edit.getLengthA();
+        }
+        return line + delta;
+    }
+}
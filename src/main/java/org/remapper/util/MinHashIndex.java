@@ -0,0 +1,256 @@
+package org.remapper.util;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.remapper.dto.*;
+import org.remapper.service.JDTService;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Approximate candidate retrieval for the Dice matching of deleted and added entities. Each entity is a set of
+ * tokens, and MinHash signatures of them are split into bands, so that two entities become candidates if they agree
+ * on all rows of some band. The Dice coefficient d of two token sets is 2J / (1 + J) for their Jaccard similarity J,
+ * so the pairs reaching {@link DiceFunction#minDice} are those with J of at least minDice / (2 - minDice). The rows
+ * per band are the most that still retrieve such a pair with the configured recall, which is
+ * 1 - (1 - J^rows)^bands. Pairs above the threshold are retrieved even more likely.
+ * <ul>
+ * <li>The tokens of a leaf node are its descendants, each numbered by its occurrence, so that the overlap of the
+ * sets is the one the Dice coefficient counts.</li>
+ * <li>The tokens of an internal node are its descendants, those before standing for the nodes they are paired with
+ * after.</li>
+ * </ul>
+ * The candidates of a node are returned in the order of the indexed nodes, so that the pairs found are added in the
+ * same order as when all of them are scored.
+ */
+public class MinHashIndex<T extends DeclarationNodeTree> {
+
+    private static final int SIGNATURE_LENGTH = 256;
+    private static final long[] SEEDS = new long[SIGNATURE_LENGTH];
+
+    private static volatile boolean enabled;
+    private static volatile double recall = 0.95;
+    private static volatile boolean recallMeasured;
+    private static final AtomicLong pairs = new AtomicLong();
+    private static final AtomicLong retrievedPairs = new AtomicLong();
+    private static final AtomicLong foundPairs = new AtomicLong();
+    private static final AtomicLong missedPairs = new AtomicLong();
+
+    static {
+        long seed = 0x5851f42d4c957f2dL;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            SEEDS[i] = seed;
+        }
+    }
+
+    private final Function<T, Set<Long>> tokenizer;
+    private final int rows;
+    private final List<Map<Long, List<Integer>>> bands;
+    private final List<T> nodes;
+
+    private MinHashIndex(List<T> nodes, Function<T, Set<Long>> tokenizer) {
+        this.tokenizer = tokenizer;
+        this.rows = getRows(DiceFunction.minDice / (2 - DiceFunction.minDice), recall);
+        this.bands = new ArrayList<>();
+        for (int band = 0; band < SIGNATURE_LENGTH / rows; band++)
+            bands.add(new HashMap<>());
+        this.nodes = nodes;
+        for (int i = 0; i < nodes.size(); i++) {
+            long[] keys = getBandKeys(nodes.get(i));
+            for (int band = 0; band < keys.length; band++)
+                bands.get(band).computeIfAbsent(keys[band], key -> new ArrayList<>()).add(i);
+        }
+    }
+
+    public static void setEnabled(boolean enabled) {
+        MinHashIndex.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param recall the probability of retrieving a pair whose Dice coefficient is exactly {@link DiceFunction#minDice}
+     */
+    public static void setRecall(double recall) {
+        MinHashIndex.recall = recall;
+    }
+
+    public static double getRecall() {
+        return recall;
+    }
+
+    /**
+     * If set, the pairs which are not retrieved are scored as well, only to count those which are missed.
+     */
+    public static void setRecallMeasured(boolean recallMeasured) {
+        MinHashIndex.recallMeasured = recallMeasured;
+    }
+
+    /**
+     * @return the number of pairs of the same entity type that could have been scored
+     */
+    public static long getPairs() {
+        return pairs.get();
+    }
+
+    /**
+     * @return the number of those pairs which were retrieved and scored
+     */
+    public static long getRetrievedPairs() {
+        return retrievedPairs.get();
+    }
+
+    /**
+     * @return the number of retrieved pairs which reached the minimum Dice coefficient
+     */
+    public static long getFoundPairs() {
+        return foundPairs.get();
+    }
+
+    /**
+     * @return the number of pairs which would have reached the minimum Dice coefficient but were not retrieved,
+     * only counted while the recall is measured
+     */
+    public static long getMissedPairs() {
+        return missedPairs.get();
+    }
+
+    public static void resetStatistics() {
+        pairs.set(0);
+        retrievedPairs.set(0);
+        foundPairs.set(0);
+        missedPairs.set(0);
+    }
+
+    public static MinHashIndex<LeafNode> ofLeafNodes(List<LeafNode> leafNodesCurrent) {
+        JDTService jdtService = new JDTServiceImpl();
+        return new MinHashIndex<>(leafNodesCurrent, leafNode -> {
+            Map<Long, Integer> occurrences = new HashMap<>();
+            Set<Long> tokens = new HashSet<>();
+            for (ChildNode child : leafNode.getDescendants(jdtService)) {
+                long token = mix(StringUtils.hash(child.getValue()), child.getLabel());
+                tokens.add(mix(token, occurrences.merge(token, 1, Integer::sum)));
+            }
+            return tokens;
+        });
+    }
+
+    /**
+     * @param internalNodesBefore the nodes whose candidates are looked up, to collect the partners of their descendants
+     */
+    public static MinHashIndex<InternalNode> ofInternalNodes(MatchPair matchPair, List<InternalNode> internalNodesBefore,
+                                                             List<InternalNode> internalNodesCurrent) {
+        Set<DeclarationNodeTree> descendantsBefore = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (InternalNode internalNode : internalNodesBefore)
+            descendantsBefore.addAll(internalNode.getDescendants());
+        Map<DeclarationNodeTree, List<DeclarationNodeTree>> partners = new IdentityHashMap<>();
+        for (Set<Pair<DeclarationNodeTree, DeclarationNodeTree>> entities : Arrays.asList(matchPair.getUnchangedEntities(),
+                matchPair.getMatchedEntities(), matchPair.getCandidateEntities())) {
+            for (Pair<DeclarationNodeTree, DeclarationNodeTree> pair : entities) {
+                if (descendantsBefore.contains(pair.getLeft()))
+                    partners.computeIfAbsent(pair.getLeft(), key -> new ArrayList<>()).add(pair.getRight());
+            }
+        }
+        Map<DeclarationNodeTree, Long> ids = new IdentityHashMap<>();
+        return new MinHashIndex<>(internalNodesCurrent, internalNode -> {
+            Set<Long> tokens = new HashSet<>();
+            for (DeclarationNodeTree descendant : internalNode.getDescendants()) {
+                for (DeclarationNodeTree partner : partners.getOrDefault(descendant, Collections.singletonList(descendant)))
+                    tokens.add(ids.computeIfAbsent(partner, key -> (long) ids.size()));
+            }
+            return tokens;
+        });
+    }
+
+    /**
+     * @return the indexed nodes sharing a band with the node, in their order
+     */
+    public List<T> getCandidates(T node) {
+        BitSet positions = new BitSet(nodes.size());
+        long[] keys = getBandKeys(node);
+        for (int band = 0; band < keys.length; band++) {
+            List<Integer> bucket = bands.get(band).get(keys[band]);
+            if (bucket != null)
+                bucket.forEach(positions::set);
+        }
+        List<T> candidates = new ArrayList<>(positions.cardinality());
+        for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1))
+            candidates.add(nodes.get(i));
+        return candidates;
+    }
+
+    /**
+     * Counts the pairs of the same entity type, the retrieved ones and the found ones. If the recall is measured,
+     * the pairs which are not retrieved are scored to count the missed ones.
+     *
+     * @param dice the Dice coefficient of a pair
+     */
+    public void addStatistics(List<T> nodesBefore, List<EntityPair> entityPairs, int retrieved, BiFunction<T, T, Double> dice) {
+        Map<EntityType, Integer> typesCurrent = new EnumMap<>(EntityType.class);
+        for (T node : nodes)
+            typesCurrent.merge(node.getType(), 1, Integer::sum);
+        long sameTypePairs = 0;
+        for (T node : nodesBefore)
+            sameTypePairs += typesCurrent.getOrDefault(node.getType(), 0);
+        pairs.addAndGet(sameTypePairs);
+        retrievedPairs.addAndGet(retrieved);
+        foundPairs.addAndGet(entityPairs.size());
+        if (!recallMeasured || sameTypePairs == retrieved)
+            return;
+        for (T nodeBefore : nodesBefore) {
+            Set<T> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+            candidates.addAll(getCandidates(nodeBefore));
+            for (T nodeCurrent : nodes) {
+                if (nodeBefore.getType() == nodeCurrent.getType() && !candidates.contains(nodeCurrent) &&
+                        dice.apply(nodeBefore, nodeCurrent) >= DiceFunction.minDice)
+                    missedPairs.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the band keys of the MinHash signature of the node, none if it has no tokens
+     */
+    private long[] getBandKeys(T node) {
+        Set<Long> tokens = tokenizer.apply(node);
+        if (tokens.isEmpty())
+            return new long[0];
+        long[] signature = new long[SIGNATURE_LENGTH];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (long token : tokens) {
+            for (int i = 0; i < SIGNATURE_LENGTH; i++)
+                signature[i] = Math.min(signature[i], mix(token, SEEDS[i]));
+        }
+        long[] keys = new long[SIGNATURE_LENGTH / rows];
+        for (int band = 0; band < keys.length; band++) {
+            long key = band;
+            for (int row = band * rows; row < (band + 1) * rows; row++)
+                key = mix(key, signature[row]);
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * @return the most rows per band for which a pair of the Jaccard similarity is retrieved with the recall
+     */
+    private static int getRows(double jaccard, double recall) {
+        for (int rows = SIGNATURE_LENGTH; rows > 1; rows--) {
+            int bands = SIGNATURE_LENGTH / rows;
+            if (1 - Math.pow(1 - Math.pow(jaccard, rows), bands) >= recall)
+                return rows;
+        }
+        return 1;
+    }
+
+    private static long mix(long hash, long value) {
+        hash ^= value;
+        hash *= 0x9e3779b97f4a7c15L;
+        return hash ^ (hash >>> 32);
+    }
+}
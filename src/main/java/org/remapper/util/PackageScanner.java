@@ -0,0 +1,89 @@
+package org.remapper.util;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.compiler.IScanner;
+import org.eclipse.jdt.core.compiler.ITerminalSymbols;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the package declaration of a Java file with the JDT scanner, stopping at the first token that cannot
+ * precede it. Package names are cached by blob id, since a blob always declares the same package.
+ */
+public class PackageScanner {
+
+    private static final int MAX_ENTRIES = 100_000;
+
+    private static final Map<ObjectId, String> packageNames = Collections.synchronizedMap(
+            new LinkedHashMap<ObjectId, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ObjectId, String> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            });
+
+    /**
+     * @return the package declared by the blob, "" for the default package
+     */
+    public static String getPackageName(ObjectReader reader, ObjectId blobId) throws IOException {
+        String packageName = packageNames.get(blobId);
+        if (packageName == null) {
+            packageName = scanPackageName(SourceCache.getSharedCache().getSource(reader, blobId).toCharArray());
+            packageNames.put(blobId.copy(), packageName);
+        }
+        return packageName;
+    }
+
+    /**
+     * Only annotations may come before the package declaration, so anything else at the top level ends the scan.
+     * The names of annotations are the tokens following an {@code @} or a dot.
+     *
+     * @return the declared package, "" for the default package
+     */
+    public static String scanPackageName(char[] source) {
+        IScanner scanner = ToolFactory.createScanner(false, false, false, JavaCore.VERSION_11);
+        scanner.setSource(source);
+        int depth = 0;
+        int previous = ITerminalSymbols.TokenNameEOF;
+        try {
+            for (int token = scanner.getNextToken(); token != ITerminalSymbols.TokenNameEOF;
+                 previous = token, token = scanner.getNextToken()) {
+                if (token == ITerminalSymbols.TokenNameLPAREN) {
+                    depth++;
+                } else if (token == ITerminalSymbols.TokenNameRPAREN) {
+                    depth--;
+                } else if (depth > 0) {
+                    continue;
+                } else if (token == ITerminalSymbols.TokenNamepackage) {
+                    return scanQualifiedName(scanner);
+                } else if (token == ITerminalSymbols.TokenNameAT || token == ITerminalSymbols.TokenNameDOT ||
+                        previous == ITerminalSymbols.TokenNameAT || previous == ITerminalSymbols.TokenNameDOT) {
+                    continue;
+                } else {
+                    return "";
+                }
+            }
+        } catch (InvalidInputException ignored) {
+        }
+        return "";
+    }
+
+    private static String scanQualifiedName(IScanner scanner) throws InvalidInputException {
+        StringBuilder name = new StringBuilder();
+        for (int token = scanner.getNextToken(); token != ITerminalSymbols.TokenNameSEMICOLON &&
+                token != ITerminalSymbols.TokenNameEOF; token = scanner.getNextToken()) {
+            if (token == ITerminalSymbols.TokenNameDOT)
+                name.append('.');
+            else
+                name.append(scanner.getCurrentTokenSource());
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package org.remapper.util;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.compiler.IScanner;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Settings shared by all parsers of a run: the AST level, the compiler options of one Java version and the
+ * boot classpath of the running VM. The options are computed once, and parsers are reused per thread. A parser
+ * taken but never used keeps the settings of its factory, so every factory sets all of them again.
+ * The source roots differ per commit and are given when a parser is taken.
+ */
+public class ParserEnvironment {
+
+    public static final String DEFAULT_JAVA_VERSION = JavaCore.VERSION_1_8;
+
+    private static final ParserEnvironment defaultEnvironment = new ParserEnvironment(DEFAULT_JAVA_VERSION);
+    private static final Map<File, ParserEnvironment> repositoryEnvironments = new ConcurrentHashMap<>();
+
+    private final int apiLevel;
+    private final String javaVersion;
+    private final Map<String, String> compilerOptions;
+    private final boolean includeRunningVMBootclasspath;
+    private final int configurationHash;
+    private final ThreadLocal<ASTParser> parsers;
+
+    /**
+     * @param javaVersion source and compliance level, e.g. {@link JavaCore#VERSION_17}
+     */
+    public ParserEnvironment(String javaVersion) {
+        this.apiLevel = AST.JLS19;
+        this.javaVersion = javaVersion;
+        Map<String, String> options = JavaCore.getOptions();
+        JavaCore.setComplianceOptions(javaVersion, options);
+        this.compilerOptions = Collections.unmodifiableMap(options);
+        this.includeRunningVMBootclasspath = true;
+        this.configurationHash = Objects.hash(apiLevel, new TreeMap<>(compilerOptions), includeRunningVMBootclasspath);
+        this.parsers = ThreadLocal.withInitial(() -> ASTParser.newParser(apiLevel));
+    }
+
+    public static ParserEnvironment getDefault() {
+        return defaultEnvironment;
+    }
+
+    /**
+     * @return the environment set for the repository, the default one otherwise
+     */
+    public static ParserEnvironment getEnvironment(Repository repository) {
+        return repositoryEnvironments.getOrDefault(repository.getDirectory().getAbsoluteFile(), defaultEnvironment);
+    }
+
+    public static void setEnvironment(Repository repository, ParserEnvironment environment) {
+        repositoryEnvironments.put(repository.getDirectory().getAbsoluteFile(), environment);
+    }
+
+    public String getJavaVersion() {
+        return javaVersion;
+    }
+
+    /**
+     * @return a hash of all settings which determine the ASTs built from a source
+     */
+    public int getConfigurationHash() {
+        return configurationHash;
+    }
+
+    /**
+     * Compilation units with bindings resolved against the source roots, or recovered if there is none.
+     * The parser belongs to the calling thread and must be used before it asks for another one.
+     */
+    public ASTParser getASTParser(String[] sourcepathEntries, String[] encodings) {
+        ASTParser parser = getParser(ASTParser.K_COMPILATION_UNIT, true, true);
+        parser.setEnvironment(null, sourcepathEntries, encodings, includeRunningVMBootclasspath);
+        parser.setUnitName("unitName");
+        return parser;
+    }
+
+    public ASTParser getASTParser() {
+        return getASTParser(null, null);
+    }
+
+    /**
+     * Compilation units without bindings.
+     */
+    public ASTParser getFastParser() {
+        return getParser(ASTParser.K_COMPILATION_UNIT, false, false);
+    }
+
+    /**
+     * Compilation units without bindings, with statements recovered like those of {@link #getASTParser()},
+     * so that both build the same declaration node trees.
+     */
+    public ASTParser getSourceParser() {
+        return getParser(ASTParser.K_COMPILATION_UNIT, false, true);
+    }
+
+    /**
+     * Compilation units without bindings and method bodies, which only locate the declarations.
+     */
+    public ASTParser getOutlineParser() {
+        ASTParser parser = getSourceParser();
+        parser.setIgnoreMethodBodies(true);
+        return parser;
+    }
+
+    /**
+     * A scanner of the Java version which skips comments and whitespace.
+     */
+    public IScanner getScanner() {
+        return ToolFactory.createScanner(false, false, false, javaVersion, javaVersion);
+    }
+
+    /**
+     * Class body declarations without bindings.
+     */
+    public ASTParser getBodyParser() {
+        return getParser(ASTParser.K_CLASS_BODY_DECLARATIONS, false, false);
+    }
+
+    /**
+     * @return the parser of the thread with every setting applied, bindings recovered if they are resolved, method
+     * bodies parsed, no environment and no unit name
+     */
+    private ASTParser getParser(int kind, boolean resolveBindings, boolean statementsRecovery) {
+        ASTParser parser = parsers.get();
+        parser.setKind(kind);
+        parser.setCompilerOptions(compilerOptions);
+        parser.setResolveBindings(resolveBindings);
+        parser.setBindingsRecovery(resolveBindings);
+        parser.setStatementsRecovery(statementsRecovery);
+        parser.setIgnoreMethodBodies(false);
+        parser.setEnvironment(null, null, null, false);
+        parser.setUnitName(null);
+        parser.setSourceRange(0, -1);
+        return parser;
+    }
+}
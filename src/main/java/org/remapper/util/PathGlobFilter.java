@@ -0,0 +1,97 @@
+package org.remapper.util;
+
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Includes or excludes paths by globs such as {@code **}{@code /generated/**} or {@code src/test/**}.
+ * {@code **} matches across directories, {@code *} and {@code ?} match within one path segment.
+ * Excluded directories are not entered; include patterns are only checked against files.
+ */
+public class PathGlobFilter extends TreeFilter {
+
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+
+    private PathGlobFilter(List<Pattern> includes, List<Pattern> excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * @return {@link TreeFilter#ALL} if there is no pattern at all
+     */
+    public static TreeFilter create(Collection<String> includes, Collection<String> excludes) {
+        if (includes.isEmpty() && excludes.isEmpty())
+            return TreeFilter.ALL;
+        return new PathGlobFilter(compile(includes), compile(excludes));
+    }
+
+    private static List<Pattern> compile(Collection<String> globs) {
+        List<Pattern> patterns = new ArrayList<>();
+        for (String glob : globs)
+            patterns.add(Pattern.compile(toRegex(glob)));
+        return patterns;
+    }
+
+    private static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = glob.startsWith("/") ? 1 : 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i)) {
+                regex.append("(.*/)?");
+                i += 3;
+                continue;
+            } else if (glob.startsWith("**", i)) {
+                regex.append(".*");
+                i += 2;
+                continue;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+            i++;
+        }
+        return regex.toString();
+    }
+
+    private static boolean matches(List<Pattern> patterns, String path) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches())
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean include(TreeWalk walker) {
+        String path = walker.getPathString();
+        if (walker.isSubtree())
+            return !matches(excludes, path) && !matches(excludes, path + "/");
+        return (includes.isEmpty() || matches(includes, path)) && !matches(excludes, path);
+    }
+
+    @Override
+    public boolean shouldBeRecursive() {
+        return true;
+    }
+
+    @Override
+    public TreeFilter clone() {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "PATH_GLOB(" + includes + ", " + excludes + ")";
+    }
+}
@@ -0,0 +1,111 @@
+package org.remapper.util;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of decoded blob contents keyed by blob id, bounded by an estimate of the retained bytes.
+ * The "after" version of a file in one commit is the "before" version in the next one,
+ * so walking history decodes each blob only once.
+ */
+public class SourceCache {
+
+    private static final SourceCache sharedCache = new SourceCache(256L * 1024 * 1024);
+
+    private final LinkedHashMap<ObjectId, String> sources;
+    private long maxBytes;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public SourceCache(long maxBytes) {
+        this.sources = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxBytes = maxBytes;
+    }
+
+    public static SourceCache getSharedCache() {
+        return sharedCache;
+    }
+
+    public String getSource(ObjectReader reader, ObjectId blobId) throws IOException {
+        synchronized (this) {
+            String source = sources.get(blobId);
+            if (source != null) {
+                hits++;
+                return source;
+            }
+            misses++;
+        }
+        ObjectLoader loader = reader.open(blobId, Constants.OBJ_BLOB);
+        String source = new String(loader.getCachedBytes(Integer.MAX_VALUE), StandardCharsets.UTF_8);
+        put(blobId.copy(), source);
+        return source;
+    }
+
+    private synchronized void put(ObjectId blobId, String source) {
+        long size = sizeOf(source);
+        if (size > maxBytes)
+            return;
+        String previous = sources.put(blobId, source);
+        if (previous != null)
+            usedBytes -= sizeOf(previous);
+        usedBytes += size;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<ObjectId, String>> iterator = sources.entrySet().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<ObjectId, String> eldest = iterator.next();
+            usedBytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * two bytes per char, which is an upper bound for compact strings
+     */
+    private static long sizeOf(String source) {
+        return 2L * source.length();
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized void clear() {
+        sources.clear();
+        usedBytes = 0;
+    }
+}
@@ -0,0 +1,82 @@
+package org.remapper.util;
+
+import org.eclipse.jdt.core.compiler.IScanner;
+import org.eclipse.jdt.core.compiler.ITerminalSymbols;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares Java sources by their tokens, without comments and whitespace. The declaration node trees keep neither
+ * of them, and Javadoc is stripped when they are built, so two versions of a file with the same tokens declare the
+ * same entities with the same text. Import declarations are compared regardless of their order, since reordering
+ * them does not change what the names refer to.
+ */
+public class SourceTokens {
+
+    private static volatile boolean enabled = true;
+
+    /**
+     * Without it, modified files with the same declarations are resolved and pruned like any other modified file.
+     */
+    public static void setEnabled(boolean enabled) {
+        SourceTokens.enabled = enabled;
+    }
+
+    /**
+     * @return true if modified files with the same declarations are matched from their outlines alone
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true if the sources have the same tokens and the same imports, false if they differ or cannot be scanned
+     */
+    public static boolean haveSameDeclarations(ParserEnvironment environment, String before, String after) {
+        IScanner scannerBefore = environment.getScanner();
+        IScanner scannerAfter = environment.getScanner();
+        scannerBefore.setSource(before.toCharArray());
+        scannerAfter.setSource(after.toCharArray());
+        List<String> importsBefore = new ArrayList<>();
+        List<String> importsAfter = new ArrayList<>();
+        try {
+            while (true) {
+                int tokenBefore = nextToken(scannerBefore, importsBefore);
+                int tokenAfter = nextToken(scannerAfter, importsAfter);
+                if (tokenBefore != tokenAfter)
+                    return false;
+                if (tokenBefore == ITerminalSymbols.TokenNameEOF)
+                    break;
+                if (!Arrays.equals(scannerBefore.getCurrentTokenSource(), scannerAfter.getCurrentTokenSource()))
+                    return false;
+            }
+        } catch (InvalidInputException e) {
+            return false;
+        }
+        Collections.sort(importsBefore);
+        Collections.sort(importsAfter);
+        return importsBefore.equals(importsAfter);
+    }
+
+    /**
+     * @param imports the import declarations skipped over are added to it as their joined tokens
+     * @return the next token which is not part of an import declaration
+     */
+    private static int nextToken(IScanner scanner, List<String> imports) throws InvalidInputException {
+        int token = scanner.getNextToken();
+        while (token == ITerminalSymbols.TokenNameimport) {
+            StringBuilder importDeclaration = new StringBuilder();
+            for (token = scanner.getNextToken(); token != ITerminalSymbols.TokenNameSEMICOLON &&
+                    token != ITerminalSymbols.TokenNameEOF; token = scanner.getNextToken())
+                importDeclaration.append(scanner.getCurrentTokenSource()).append(' ');
+            imports.add(importDeclaration.toString());
+            if (token == ITerminalSymbols.TokenNameSEMICOLON)
+                token = scanner.getNextToken();
+        }
+        return token;
+    }
+}
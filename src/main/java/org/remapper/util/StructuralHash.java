@@ -0,0 +1,50 @@
+package org.remapper.util;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ChildListPropertyDescriptor;
+import org.eclipse.jdt.core.dom.ChildPropertyDescriptor;
+import org.eclipse.jdt.core.dom.StructuralPropertyDescriptor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 64-bit hash of an AST subtree computed bottom-up from the node types, the simple property values, like names,
+ * literals, operators and modifiers, and the hashes of the children. Positions, flags and comments other than
+ * Javadoc are left out, as the flattened text of the subtree leaves them out, so the same text has the same hash.
+ */
+public class StructuralHash {
+
+    public static long hash(ASTNode node) {
+        return hash(node, null);
+    }
+
+    /**
+     * @param hashes the hashes of the nodes among its keys found within the subtree are put into it
+     */
+    public static long hash(ASTNode node, Map<ASTNode, Long> hashes) {
+        long hash = mix(0xcbf29ce484222325L, node.getNodeType());
+        for (Object property : node.structuralPropertiesForType()) {
+            Object value = node.getStructuralProperty((StructuralPropertyDescriptor) property);
+            if (property instanceof ChildListPropertyDescriptor) {
+                List<?> children = (List<?>) value;
+                hash = mix(hash, children.size());
+                for (Object child : children)
+                    hash = mix(hash, hash((ASTNode) child, hashes));
+            } else if (property instanceof ChildPropertyDescriptor) {
+                hash = mix(hash, value == null ? 0 : hash((ASTNode) value, hashes));
+            } else {
+                hash = mix(hash, StringUtils.hash(String.valueOf(value)));
+            }
+        }
+        if (hashes != null && hashes.containsKey(node))
+            hashes.put(node, hash);
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        hash ^= value;
+        hash *= 0x9e3779b97f4a7c15L;
+        return hash ^ (hash >>> 32);
+    }
+}
@@ -0,0 +1,394 @@
+package org.remapper.util;
+
+import org.eclipse.jdt.core.dom.*;
+import org.remapper.dto.DeclarationNodeTree;
+import org.remapper.dto.EntityType;
+import org.remapper.dto.InternalNode;
+import org.remapper.dto.RootNode;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Declarations of the changed files of one side of a commit, looked up by name instead of by binding. When the
+ * name-based mode is enabled, the files are parsed without bindings and the dependencies are resolved against this
+ * table, which is much faster but approximate. Only the declarations of the changed files are known, which are the
+ * only ones whose dependencies are used. The rules are:
+ * <ul>
+ * <li>A simple type name resolves to the first of: the enclosing types or their member types, innermost first;
+ * a single-type import; a type of the same package; the on-demand imports. A single-type import of a type outside
+ * the table hides the other rules, and a name found by more than one on-demand import is ambiguous.</li>
+ * <li>A member is looked up in a type and then level by level in its super types, as far as they are in the table.
+ * The first level declaring a member of that name decides. Methods are filtered by arity, varargs accepting any
+ * longer argument list, and method references accept any arity.</li>
+ * <li>An unqualified member is looked up in the enclosing types, innermost first, then in the static imports.
+ * Names of parameters and local variables declared before in the same declaration shadow fields regardless of
+ * their scope.</li>
+ * <li>The type of a receiver is taken from the declared type of a variable, field or method, a cast, an instance
+ * creation, or the name of a type. A receiver whose type is outside the table resolves nothing, even though the
+ * type may inherit the member; a receiver whose type cannot be told, like a lambda parameter, resolves to the only
+ * member of that name and arity in the whole table.</li>
+ * <li>More than one candidate left by a rule is ambiguous and resolves nothing, e.g. overloads of the same arity.
+ * A name in a switch case resolves to the only enum constant of that name.</li>
+ * </ul>
+ */
+public class SymbolTable {
+
+    private static volatile boolean enabled;
+
+    private final Map<String, DeclarationNodeTree> types;
+    private final Map<String, Map<String, List<DeclarationNodeTree>>> members;
+    private final Map<String, List<DeclarationNodeTree>> membersByName;
+    private final Map<String, List<String>> superTypes;
+    private final Map<CompilationUnit, Imports> imports;
+
+    public SymbolTable(Collection<RootNode> dnts) {
+        this.types = new HashMap<>();
+        this.members = new HashMap<>();
+        this.membersByName = new HashMap<>();
+        this.superTypes = new HashMap<>();
+        this.imports = new HashMap<>();
+        List<DeclarationNodeTree> typeNodes = new ArrayList<>();
+        for (RootNode dnt : dnts)
+            populateDeclarations(dnt, typeNodes);
+        for (DeclarationNodeTree type : typeNodes)
+            superTypes.put(getQualifiedName(type), resolveSuperTypes(type));
+    }
+
+    public static void setEnabled(boolean enabled) {
+        SymbolTable.enabled = enabled;
+    }
+
+    /**
+     * @return true if dependencies are resolved by names instead of bindings
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    private void populateDeclarations(DeclarationNodeTree node, List<DeclarationNodeTree> typeNodes) {
+        for (DeclarationNodeTree child : node.getChildren()) {
+            if (child instanceof InternalNode) {
+                if (types.putIfAbsent(getQualifiedName(child), child) == null)
+                    typeNodes.add(child);
+                populateDeclarations(child, typeNodes);
+            } else if (child.getType() != EntityType.INITIALIZER) {
+                members.computeIfAbsent(child.getNamespace(), key -> new HashMap<>())
+                        .computeIfAbsent(child.getName(), key -> new ArrayList<>()).add(child);
+                membersByName.computeIfAbsent(child.getName(), key -> new ArrayList<>()).add(child);
+            }
+        }
+    }
+
+    private List<String> resolveSuperTypes(DeclarationNodeTree type) {
+        List<Type> declaredTypes = new ArrayList<>();
+        ASTNode declaration = type.getDeclaration();
+        if (declaration instanceof TypeDeclaration) {
+            Type superclassType = ((TypeDeclaration) declaration).getSuperclassType();
+            if (superclassType != null)
+                declaredTypes.add(superclassType);
+            for (Object superInterfaceType : ((TypeDeclaration) declaration).superInterfaceTypes())
+                declaredTypes.add((Type) superInterfaceType);
+        } else if (declaration instanceof EnumDeclaration) {
+            for (Object superInterfaceType : ((EnumDeclaration) declaration).superInterfaceTypes())
+                declaredTypes.add((Type) superInterfaceType);
+        } else if (declaration instanceof RecordDeclaration) {
+            for (Object superInterfaceType : ((RecordDeclaration) declaration).superInterfaceTypes())
+                declaredTypes.add((Type) superInterfaceType);
+        }
+        CompilationUnit cu = getCompilationUnit(type);
+        List<String> enclosingTypes = getEnclosingTypes(type.getParent());
+        List<String> resolvedTypes = new ArrayList<>();
+        for (Type declaredType : declaredTypes) {
+            String typeName = resolveTypeName(declaredType, cu, enclosingTypes);
+            if (typeName != null && !typeName.isEmpty())
+                resolvedTypes.add(typeName);
+        }
+        return resolvedTypes;
+    }
+
+    public static String getQualifiedName(DeclarationNodeTree type) {
+        return type.getNamespace().isEmpty() ? type.getName() : type.getNamespace() + "." + type.getName();
+    }
+
+    public static CompilationUnit getCompilationUnit(DeclarationNodeTree node) {
+        while (!(node instanceof RootNode))
+            node = node.getParent();
+        return (CompilationUnit) node.getDeclaration();
+    }
+
+    /**
+     * @return the qualified names of the node if it is a type and of the types enclosing it, innermost first
+     */
+    public static List<String> getEnclosingTypes(DeclarationNodeTree node) {
+        List<String> enclosingTypes = new ArrayList<>();
+        for (; node != null && !(node instanceof RootNode); node = node.getParent()) {
+            if (node instanceof InternalNode)
+                enclosingTypes.add(getQualifiedName(node));
+        }
+        return enclosingTypes;
+    }
+
+    public DeclarationNodeTree getType(String qualifiedName) {
+        return types.get(qualifiedName);
+    }
+
+    /**
+     * @param name a simple or qualified type name as written in the compilation unit
+     * @return the type declaration, or null if the name is ambiguous or not declared in the table
+     */
+    public DeclarationNodeTree resolveType(String name, CompilationUnit cu, List<String> enclosingTypes) {
+        int index = name.indexOf('.');
+        if (index != -1) {
+            if (types.containsKey(name))
+                return types.get(name);
+            DeclarationNodeTree outerType = resolveType(name.substring(0, index), cu, enclosingTypes);
+            return outerType == null ? null : types.get(getQualifiedName(outerType) + name.substring(index));
+        }
+        for (String enclosingType : enclosingTypes) {
+            if (enclosingType.equals(name) || enclosingType.endsWith("." + name))
+                return types.get(enclosingType);
+            if (types.containsKey(enclosingType + "." + name))
+                return types.get(enclosingType + "." + name);
+        }
+        Imports fileImports = getImports(cu);
+        if (fileImports.singleTypes.containsKey(name))
+            return types.get(fileImports.singleTypes.get(name));
+        String samePackageType = fileImports.packageName.isEmpty() ? name : fileImports.packageName + "." + name;
+        if (types.containsKey(samePackageType))
+            return types.get(samePackageType);
+        DeclarationNodeTree candidate = null;
+        for (String onDemandImport : fileImports.onDemandImports) {
+            DeclarationNodeTree type = types.get(onDemandImport + "." + name);
+            if (type == null)
+                continue;
+            if (candidate != null && candidate != type)
+                return null;
+            candidate = type;
+        }
+        return candidate;
+    }
+
+    /**
+     * @return the qualified name of the type if it is declared in the table, "" if it is any other type, or null for
+     * a type to be inferred
+     */
+    public String resolveTypeName(Type type, CompilationUnit cu, List<String> enclosingTypes) {
+        if (type == null)
+            return null;
+        if (type instanceof ParameterizedType)
+            return resolveTypeName(((ParameterizedType) type).getType(), cu, enclosingTypes);
+        String name;
+        if (type instanceof SimpleType)
+            name = ((SimpleType) type).getName().getFullyQualifiedName();
+        else if (type instanceof QualifiedType)
+            name = type.toString();
+        else if (type instanceof NameQualifiedType)
+            name = ((NameQualifiedType) type).getQualifier().getFullyQualifiedName() + "." +
+                    ((NameQualifiedType) type).getName().getIdentifier();
+        else
+            return "";
+        if (name.equals("var"))
+            return null;
+        DeclarationNodeTree resolvedType = resolveType(name, cu, enclosingTypes);
+        return resolvedType == null ? "" : getQualifiedName(resolvedType);
+    }
+
+    /**
+     * @return the type of a field or enum constant or the return type of a method, as by
+     * {@link #resolveTypeName(Type, CompilationUnit, List)}
+     */
+    public String getDeclaredType(DeclarationNodeTree member) {
+        ASTNode declaration = member.getDeclaration();
+        Type type;
+        if (declaration instanceof FieldDeclaration) {
+            for (Object fragment : ((FieldDeclaration) declaration).fragments()) {
+                if (((VariableDeclarationFragment) fragment).getName().getIdentifier().equals(member.getName()) &&
+                        ((VariableDeclarationFragment) fragment).getExtraDimensions() > 0)
+                    return "";
+            }
+            type = ((FieldDeclaration) declaration).getType();
+        } else if (declaration instanceof MethodDeclaration) {
+            if (((MethodDeclaration) declaration).getExtraDimensions() > 0)
+                return "";
+            type = ((MethodDeclaration) declaration).getReturnType2();
+            if (type == null)
+                return "";
+        } else if (declaration instanceof AnnotationTypeMemberDeclaration) {
+            type = ((AnnotationTypeMemberDeclaration) declaration).getType();
+        } else if (declaration instanceof EnumConstantDeclaration) {
+            return member.getNamespace();
+        } else {
+            return "";
+        }
+        return resolveTypeName(type, getCompilationUnit(member), getEnclosingTypes(member.getParent()));
+    }
+
+    /**
+     * @param type  the qualified name of the receiver type, "" for a type outside the table or null if unknown
+     * @param arity the number of arguments, or -1 for a method reference
+     */
+    public DeclarationNodeTree resolveMethod(String type, String name, int arity) {
+        return resolveMember(type, name, method(arity));
+    }
+
+    /**
+     * @return the method called by an unqualified invocation
+     */
+    public DeclarationNodeTree resolveMethod(CompilationUnit cu, List<String> enclosingTypes, String name, int arity) {
+        return resolveMember(cu, enclosingTypes, name, method(arity));
+    }
+
+    /**
+     * @return the method of a super type of the type, called by an invocation on super
+     */
+    public DeclarationNodeTree resolveSuperMethod(String type, String name, int arity) {
+        return unique(findInheritedMembers(type, name, method(arity)));
+    }
+
+    public DeclarationNodeTree resolveField(String type, String name) {
+        return resolveMember(type, name, SymbolTable::isField);
+    }
+
+    /**
+     * @return the field or enum constant referenced by a simple name
+     */
+    public DeclarationNodeTree resolveField(CompilationUnit cu, List<String> enclosingTypes, String name) {
+        return resolveMember(cu, enclosingTypes, name, SymbolTable::isField);
+    }
+
+    public DeclarationNodeTree resolveSuperField(String type, String name) {
+        return unique(findInheritedMembers(type, name, SymbolTable::isField));
+    }
+
+    public DeclarationNodeTree resolveAnnotationMember(String type, String name) {
+        return resolveMember(type, name, member -> member.getType() == EntityType.ANNOTATION_MEMBER);
+    }
+
+    /**
+     * @return the enum constant of a switch case, which must be the only one of that name
+     */
+    public DeclarationNodeTree resolveEnumConstant(String name) {
+        return unique(filter(membersByName.get(name), member -> member.getType() == EntityType.ENUM_CONSTANT));
+    }
+
+    private DeclarationNodeTree resolveMember(String type, String name, Predicate<DeclarationNodeTree> predicate) {
+        if (type == null)
+            return unique(filter(membersByName.get(name), predicate));
+        if (type.isEmpty())
+            return null;
+        return unique(findMembers(type, name, predicate));
+    }
+
+    private DeclarationNodeTree resolveMember(CompilationUnit cu, List<String> enclosingTypes, String name,
+                                              Predicate<DeclarationNodeTree> predicate) {
+        for (String enclosingType : enclosingTypes) {
+            List<DeclarationNodeTree> candidates = findMembers(enclosingType, name, predicate);
+            if (!candidates.isEmpty())
+                return unique(candidates);
+        }
+        Imports fileImports = getImports(cu);
+        List<String> importedTypes = fileImports.staticMembers.getOrDefault(name, fileImports.staticOnDemandImports);
+        Set<DeclarationNodeTree> candidates = new LinkedHashSet<>();
+        for (String importedType : importedTypes)
+            candidates.addAll(findMembers(importedType, name, predicate));
+        return unique(new ArrayList<>(candidates));
+    }
+
+    /**
+     * @return the members declared by the type, or else by the closest level of its super types which has any
+     */
+    private List<DeclarationNodeTree> findMembers(String type, String name, Predicate<DeclarationNodeTree> predicate) {
+        List<DeclarationNodeTree> candidates = filter(members.getOrDefault(type, Collections.emptyMap()).get(name), predicate);
+        return candidates.isEmpty() ? findInheritedMembers(type, name, predicate) : candidates;
+    }
+
+    private List<DeclarationNodeTree> findInheritedMembers(String type, String name, Predicate<DeclarationNodeTree> predicate) {
+        Set<String> visited = new HashSet<>(Collections.singleton(type));
+        List<String> level = superTypes.getOrDefault(type, Collections.emptyList());
+        while (!level.isEmpty()) {
+            Set<DeclarationNodeTree> candidates = new LinkedHashSet<>();
+            List<String> nextLevel = new ArrayList<>();
+            for (String superType : level) {
+                if (!visited.add(superType))
+                    continue;
+                candidates.addAll(filter(members.getOrDefault(superType, Collections.emptyMap()).get(name), predicate));
+                nextLevel.addAll(superTypes.getOrDefault(superType, Collections.emptyList()));
+            }
+            if (!candidates.isEmpty())
+                return new ArrayList<>(candidates);
+            level = nextLevel;
+        }
+        return Collections.emptyList();
+    }
+
+    private static Predicate<DeclarationNodeTree> method(int arity) {
+        return member -> {
+            if (member.getType() != EntityType.METHOD)
+                return false;
+            if (arity == -1)
+                return true;
+            List<?> parameters = ((MethodDeclaration) member.getDeclaration()).parameters();
+            if (parameters.size() == arity)
+                return true;
+            return !parameters.isEmpty() && ((SingleVariableDeclaration) parameters.get(parameters.size() - 1)).isVarargs() &&
+                    arity >= parameters.size() - 1;
+        };
+    }
+
+    private static boolean isField(DeclarationNodeTree member) {
+        return member.getType() == EntityType.FIELD || member.getType() == EntityType.ENUM_CONSTANT;
+    }
+
+    private static List<DeclarationNodeTree> filter(List<DeclarationNodeTree> members, Predicate<DeclarationNodeTree> predicate) {
+        if (members == null)
+            return Collections.emptyList();
+        List<DeclarationNodeTree> filtered = new ArrayList<>();
+        for (DeclarationNodeTree member : members) {
+            if (predicate.test(member))
+                filtered.add(member);
+        }
+        return filtered;
+    }
+
+    private static DeclarationNodeTree unique(List<DeclarationNodeTree> candidates) {
+        return candidates.size() == 1 ? candidates.get(0) : null;
+    }
+
+    private Imports getImports(CompilationUnit cu) {
+        return imports.computeIfAbsent(cu, Imports::new);
+    }
+
+    private static class Imports {
+
+        private final String packageName;
+        private final Map<String, String> singleTypes;
+        private final List<String> onDemandImports;
+        private final Map<String, List<String>> staticMembers;
+        private final List<String> staticOnDemandImports;
+
+        private Imports(CompilationUnit cu) {
+            PackageDeclaration packageDeclaration = cu.getPackage();
+            this.packageName = packageDeclaration != null ? packageDeclaration.getName().getFullyQualifiedName() : "";
+            this.singleTypes = new HashMap<>();
+            this.onDemandImports = new ArrayList<>();
+            this.staticMembers = new HashMap<>();
+            this.staticOnDemandImports = new ArrayList<>();
+            for (Object node : cu.imports()) {
+                ImportDeclaration importDeclaration = (ImportDeclaration) node;
+                String name = importDeclaration.getName().getFullyQualifiedName();
+                if (importDeclaration.isStatic() && importDeclaration.isOnDemand()) {
+                    staticOnDemandImports.add(name);
+                } else if (importDeclaration.isStatic()) {
+                    int index = name.lastIndexOf('.');
+                    if (index != -1)
+                        staticMembers.computeIfAbsent(name.substring(index + 1), key -> new ArrayList<>()).add(name.substring(0, index));
+                } else if (importDeclaration.isOnDemand()) {
+                    onDemandImports.add(name);
+                } else {
+                    singleTypes.putIfAbsent(name.substring(name.lastIndexOf('.') + 1), name);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.remapper.util;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.remapper.service.GitService;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Private work directories holding the Java sources of one commit each, all read from the same object database.
+ * A worktree is leased to one worker at a time and, when leased for another commit, only the files that differ
+ * from the commit it last held are rewritten. Only the paths asked for are written, and a worktree keeps them up
+ * to date on later leases, so it grows to the source roots in use rather than to the whole tree.
+ */
+public class WorktreePool implements Closeable {
+
+    private static final Map<File, WorktreePool> sharedPools = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (WorktreePool pool : sharedPools.values()) {
+                try {
+                    pool.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }));
+    }
+
+    /**
+     * most recently released first
+     */
+    private final Deque<Worktree> idleWorktrees;
+    private int maxWorktrees;
+    private int worktrees;
+    private boolean closed;
+
+    public WorktreePool(int maxWorktrees) {
+        this.idleWorktrees = new ArrayDeque<>();
+        this.maxWorktrees = maxWorktrees;
+    }
+
+    /**
+     * @return the pool of the repository, shared by all workers and deleted on exit
+     */
+    public static WorktreePool getSharedPool(Repository repository) {
+        return sharedPools.computeIfAbsent(repository.getDirectory().getAbsoluteFile(),
+                directory -> new WorktreePool(Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Waits until a worktree is available, then updates it to the Java sources of the commit.
+     * A worktree which already holds the commit's tree is preferred.
+     *
+     * @param paths source roots or files relative to the repository which must be written, "" for all of it
+     */
+    public Worktree lease(GitService gitService, Repository repository, RevCommit commit, Set<String> paths) throws IOException {
+        Worktree worktree;
+        try {
+            worktree = take(commit.getTree());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        try {
+            if (!commit.getTree().equals(worktree.treeId)) {
+                gitService.updateJavaSources(repository, worktree.treeId, commit, worktree.paths, worktree.directory);
+                worktree.treeId = commit.getTree().copy();
+            }
+            Set<String> newPaths = new LinkedHashSet<>(paths);
+            newPaths.removeAll(worktree.paths);
+            gitService.updateJavaSources(repository, null, commit, newPaths, worktree.directory);
+            worktree.paths.addAll(newPaths);
+        } catch (IOException | RuntimeException e) {
+            worktree.treeId = null;
+            worktree.paths.clear();
+            FileUtils.cleanDirectory(worktree.directory);
+            release(worktree);
+            throw e;
+        }
+        return worktree;
+    }
+
+    private synchronized Worktree take(ObjectId treeId) throws IOException, InterruptedException {
+        while (!closed && idleWorktrees.isEmpty() && worktrees >= maxWorktrees)
+            wait();
+        if (closed)
+            throw new IOException("Worktree pool is closed");
+        for (Iterator<Worktree> iterator = idleWorktrees.iterator(); iterator.hasNext(); ) {
+            Worktree worktree = iterator.next();
+            if (treeId.equals(worktree.treeId)) {
+                iterator.remove();
+                return worktree;
+            }
+        }
+        if (!idleWorktrees.isEmpty())
+            return idleWorktrees.pollFirst();
+        worktrees++;
+        return new Worktree(Files.createTempDirectory("ReMapper").toFile());
+    }
+
+    private synchronized void release(Worktree worktree) throws IOException {
+        if (closed) {
+            FileUtils.deleteDirectory(worktree.directory);
+            return;
+        }
+        idleWorktrees.addFirst(worktree);
+        notifyAll();
+    }
+
+    public synchronized int getMaxWorktrees() {
+        return maxWorktrees;
+    }
+
+    public synchronized void setMaxWorktrees(int maxWorktrees) {
+        this.maxWorktrees = maxWorktrees;
+        notifyAll();
+    }
+
+    /**
+     * Deletes the idle worktrees; leased ones are deleted when they are released.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        for (Worktree worktree : idleWorktrees)
+            FileUtils.deleteDirectory(worktree.directory);
+        idleWorktrees.clear();
+        notifyAll();
+    }
+
+    public class Worktree implements Closeable {
+
+        private final File directory;
+        private final Set<String> paths;
+        private ObjectId treeId;
+
+        private Worktree(File directory) {
+            this.directory = directory;
+            this.paths = new HashSet<>();
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        /**
+         * Returns the worktree to its pool.
+         */
+        @Override
+        public void close() throws IOException {
+            release(this);
+        }
+    }
+}
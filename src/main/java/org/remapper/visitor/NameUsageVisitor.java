@@ -0,0 +1,282 @@
+package org.remapper.visitor;
+
+import org.eclipse.jdt.core.dom.*;
+import org.remapper.dto.DeclarationNodeTree;
+import org.remapper.dto.EntityInfo;
+import org.remapper.util.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the same usages as {@link NodeUsageVisitor} from an AST without bindings, resolving the names with a
+ * {@link SymbolTable}. The usages are the entities of the resolved declarations.
+ */
+public class NameUsageVisitor extends ASTVisitor {
+
+    private final SymbolTable symbolTable;
+    private final CompilationUnit cu;
+    private final List<String> enclosingTypes;
+    private final Map<String, Type> localVariables;
+    private final List<EntityInfo> entityUsages;
+
+    /**
+     * @param enclosingTypes qualified names of the types enclosing the visited nodes, innermost first
+     */
+    public NameUsageVisitor(SymbolTable symbolTable, CompilationUnit cu, List<String> enclosingTypes) {
+        this.symbolTable = symbolTable;
+        this.cu = cu;
+        this.enclosingTypes = enclosingTypes;
+        this.localVariables = new HashMap<>();
+        this.entityUsages = new ArrayList<>();
+    }
+
+    public List<EntityInfo> getEntityUsages() {
+        return entityUsages;
+    }
+
+    @Override
+    public boolean visit(MethodInvocation node) {
+        add(resolveMethod(node));
+        return true;
+    }
+
+    private DeclarationNodeTree resolveMethod(MethodInvocation node) {
+        String name = node.getName().getIdentifier();
+        int arity = node.arguments().size();
+        if (node.getExpression() == null)
+            return symbolTable.resolveMethod(cu, enclosingTypes, name, arity);
+        return symbolTable.resolveMethod(inferType(node.getExpression()), name, arity);
+    }
+
+    @Override
+    public boolean visit(SuperMethodInvocation node) {
+        String name = node.getName().getIdentifier();
+        int arity = node.arguments().size();
+        if (node.getQualifier() == null) {
+            if (!enclosingTypes.isEmpty())
+                add(symbolTable.resolveSuperMethod(enclosingTypes.get(0), name, arity));
+        } else {
+            add(symbolTable.resolveMethod(getTypeName(node.getQualifier()), name, arity));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean visit(ExpressionMethodReference node) {
+        add(symbolTable.resolveMethod(inferType(node.getExpression()), node.getName().getIdentifier(), -1));
+        return true;
+    }
+
+    @Override
+    public boolean visit(TypeMethodReference node) {
+        add(symbolTable.resolveMethod(symbolTable.resolveTypeName(node.getType(), cu, enclosingTypes),
+                node.getName().getIdentifier(), -1));
+        return true;
+    }
+
+    @Override
+    public boolean visit(SuperMethodReference node) {
+        if (node.getQualifier() == null) {
+            if (!enclosingTypes.isEmpty())
+                add(symbolTable.resolveSuperMethod(enclosingTypes.get(0), node.getName().getIdentifier(), -1));
+        } else {
+            add(symbolTable.resolveMethod(getTypeName(node.getQualifier()), node.getName().getIdentifier(), -1));
+        }
+        return true;
+    }
+
+    /**
+     * Constructors are not inherited, so only those of the type itself can match its simple name.
+     */
+    @Override
+    public boolean visit(CreationReference node) {
+        String typeName = symbolTable.resolveTypeName(node.getType(), cu, enclosingTypes);
+        if (typeName != null && !typeName.isEmpty())
+            add(symbolTable.resolveMethod(typeName, symbolTable.getType(typeName).getName(), -1));
+        return true;
+    }
+
+    @Override
+    public boolean visit(MemberValuePair node) {
+        ASTNode parent = node.getParent();
+        if (parent instanceof NormalAnnotation) {
+            String typeName = getTypeName(((NormalAnnotation) parent).getTypeName());
+            add(symbolTable.resolveAnnotationMember(typeName, node.getName().getIdentifier()));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean visit(MarkerAnnotation node) {
+        return visit((Annotation) node);
+    }
+
+    @Override
+    public boolean visit(SingleMemberAnnotation node) {
+        return visit((Annotation) node);
+    }
+
+    @Override
+    public boolean visit(NormalAnnotation node) {
+        return visit((Annotation) node);
+    }
+
+    private boolean visit(Annotation node) {
+        add(symbolTable.resolveType(node.getTypeName().getFullyQualifiedName(), cu, enclosingTypes));
+        return true;
+    }
+
+    @Override
+    public boolean visit(SimpleType node) {
+        add(symbolTable.resolveType(node.getName().getFullyQualifiedName(), cu, enclosingTypes));
+        return true;
+    }
+
+    @Override
+    public boolean visit(FieldAccess node) {
+        add(symbolTable.resolveField(inferType(node.getExpression()), node.getName().getIdentifier()));
+        return true;
+    }
+
+    @Override
+    public boolean visit(SuperFieldAccess node) {
+        if (node.getQualifier() == null) {
+            if (!enclosingTypes.isEmpty())
+                add(symbolTable.resolveSuperField(enclosingTypes.get(0), node.getName().getIdentifier()));
+        } else {
+            add(symbolTable.resolveField(getTypeName(node.getQualifier()), node.getName().getIdentifier()));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean visit(QualifiedName node) {
+        if (!isExpressionName(node))
+            return false;
+        String receiverType = inferType(node.getQualifier());
+        add(symbolTable.resolveField(receiverType, node.getName().getIdentifier()));
+        return true;
+    }
+
+    @Override
+    public boolean visit(SimpleName node) {
+        if (node.isDeclaration() || !isExpressionName(node) || localVariables.containsKey(node.getIdentifier()))
+            return false;
+        DeclarationNodeTree field = symbolTable.resolveField(cu, enclosingTypes, node.getIdentifier());
+        if (field == null && node.getParent() instanceof SwitchCase)
+            field = symbolTable.resolveEnumConstant(node.getIdentifier());
+        add(field);
+        return false;
+    }
+
+    @Override
+    public boolean visit(SingleVariableDeclaration node) {
+        boolean known = !node.isVarargs() && node.getExtraDimensions() == 0;
+        localVariables.put(node.getName().getIdentifier(), known ? node.getType() : null);
+        return true;
+    }
+
+    @Override
+    public boolean visit(VariableDeclarationFragment node) {
+        ASTNode parent = node.getParent();
+        if (parent instanceof FieldDeclaration)
+            return true;
+        Type type = null;
+        if (parent instanceof VariableDeclarationStatement)
+            type = ((VariableDeclarationStatement) parent).getType();
+        else if (parent instanceof VariableDeclarationExpression)
+            type = ((VariableDeclarationExpression) parent).getType();
+        localVariables.put(node.getName().getIdentifier(), node.getExtraDimensions() == 0 ? type : null);
+        return true;
+    }
+
+    /**
+     * Names of types, labels, methods and members accessed through another node are not field references.
+     * Names qualifying a {@link QualifiedName} or a {@link FieldAccess} are skipped like {@link NodeUsageVisitor} does.
+     */
+    private boolean isExpressionName(Name node) {
+        ASTNode parent = node.getParent();
+        StructuralPropertyDescriptor location = node.getLocationInParent();
+        if (parent instanceof Type || parent instanceof FieldAccess || parent instanceof SuperFieldAccess ||
+                parent instanceof LabeledStatement || parent instanceof BreakStatement || parent instanceof ContinueStatement ||
+                parent instanceof ThisExpression)
+            return false;
+        if (parent instanceof Annotation && location == ((Annotation) parent).getTypeNameProperty())
+            return false;
+        if (node instanceof SimpleName && parent instanceof QualifiedName)
+            return false;
+        return location != MethodInvocation.NAME_PROPERTY && location != SuperMethodInvocation.NAME_PROPERTY &&
+                location != SuperMethodInvocation.QUALIFIER_PROPERTY && location != SuperMethodReference.QUALIFIER_PROPERTY &&
+                location != ExpressionMethodReference.NAME_PROPERTY && location != TypeMethodReference.NAME_PROPERTY &&
+                location != SuperMethodReference.NAME_PROPERTY && location != MemberValuePair.NAME_PROPERTY;
+    }
+
+    /**
+     * @return the qualified name of the type in the table, "" for any other type, or null if it cannot be told
+     */
+    private String inferType(Expression expression) {
+        if (expression instanceof ThisExpression) {
+            Name qualifier = ((ThisExpression) expression).getQualifier();
+            if (qualifier != null)
+                return getTypeName(qualifier);
+            return enclosingTypes.isEmpty() ? null : enclosingTypes.get(0);
+        }
+        if (expression instanceof ParenthesizedExpression)
+            return inferType(((ParenthesizedExpression) expression).getExpression());
+        if (expression instanceof CastExpression)
+            return symbolTable.resolveTypeName(((CastExpression) expression).getType(), cu, enclosingTypes);
+        if (expression instanceof ClassInstanceCreation)
+            return symbolTable.resolveTypeName(((ClassInstanceCreation) expression).getType(), cu, enclosingTypes);
+        if (expression instanceof SimpleName) {
+            String name = ((SimpleName) expression).getIdentifier();
+            if (localVariables.containsKey(name)) {
+                Type type = localVariables.get(name);
+                return type == null ? null : symbolTable.resolveTypeName(type, cu, enclosingTypes);
+            }
+            DeclarationNodeTree field = symbolTable.resolveField(cu, enclosingTypes, name);
+            if (field != null)
+                return symbolTable.getDeclaredType(field);
+            return getTypeName((SimpleName) expression);
+        }
+        if (expression instanceof QualifiedName) {
+            QualifiedName qualifiedName = (QualifiedName) expression;
+            String receiverType = inferType(qualifiedName.getQualifier());
+            DeclarationNodeTree field = symbolTable.resolveField(receiverType, qualifiedName.getName().getIdentifier());
+            if (field != null)
+                return symbolTable.getDeclaredType(field);
+            if (receiverType == null)
+                return null;
+            return getTypeName(qualifiedName);
+        }
+        if (expression instanceof FieldAccess) {
+            FieldAccess fieldAccess = (FieldAccess) expression;
+            String receiverType = inferType(fieldAccess.getExpression());
+            DeclarationNodeTree field = symbolTable.resolveField(receiverType, fieldAccess.getName().getIdentifier());
+            if (field != null)
+                return symbolTable.getDeclaredType(field);
+            return receiverType == null ? null : "";
+        }
+        if (expression instanceof MethodInvocation) {
+            DeclarationNodeTree method = resolveMethod((MethodInvocation) expression);
+            return method == null ? null : symbolTable.getDeclaredType(method);
+        }
+        if (expression instanceof StringLiteral || expression instanceof TextBlock || expression instanceof NumberLiteral ||
+                expression instanceof CharacterLiteral || expression instanceof BooleanLiteral || expression instanceof NullLiteral ||
+                expression instanceof TypeLiteral || expression instanceof ArrayCreation || expression instanceof ArrayInitializer)
+            return "";
+        return null;
+    }
+
+    private String getTypeName(Name name) {
+        DeclarationNodeTree type = symbolTable.resolveType(name.getFullyQualifiedName(), cu, enclosingTypes);
+        return type == null ? "" : SymbolTable.getQualifiedName(type);
+    }
+
+    private void add(DeclarationNodeTree declaration) {
+        if (declaration != null)
+            entityUsages.add(declaration.getEntity());
+    }
+}
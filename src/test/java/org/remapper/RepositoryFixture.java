@@ -0,0 +1,98 @@
+package org.remapper;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.remapper.dto.EntityInfo;
+import org.remapper.dto.MatchPair;
+import org.remapper.dto.StatementInfo;
+import org.remapper.dto.StatementNodeTree;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * A throwaway git repository in a temporary directory, built commit by commit from file contents.
+ */
+public class RepositoryFixture implements Closeable {
+
+    private final File directory;
+    private final Git git;
+    private final PersonIdent author;
+    private int commits;
+
+    public RepositoryFixture() throws Exception {
+        this.directory = Files.createTempDirectory("ReMapperTest").toFile();
+        this.git = Git.init().setDirectory(directory).setInitialBranch("master").call();
+        this.author = new PersonIdent("ReMapper", "remapper@example.com", new Date(1700000000000L), TimeZone.getTimeZone("UTC"));
+    }
+
+    public Repository getRepository() {
+        return git.getRepository();
+    }
+
+    /**
+     * @param files the contents of the files to write, or null for the files to delete
+     */
+    public RevCommit commit(String message, Map<String, String> files) throws Exception {
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            File file = new File(directory, entry.getKey());
+            if (entry.getValue() == null) {
+                git.rm().addFilepattern(entry.getKey()).call();
+            } else {
+                FileUtils.writeStringToFile(file, entry.getValue(), StandardCharsets.UTF_8);
+                git.add().addFilepattern(entry.getKey()).call();
+            }
+        }
+        PersonIdent ident = new PersonIdent(author, new Date(author.getWhen().getTime() + 1000L * commits++));
+        return git.commit().setMessage(message).setAuthor(ident).setCommitter(ident).call();
+    }
+
+    /**
+     * @param pathsAndContents paths each followed by its content, null to delete the file
+     */
+    public static Map<String, String> files(String... pathsAndContents) {
+        Map<String, String> files = new LinkedHashMap<>();
+        for (int i = 0; i < pathsAndContents.length; i += 2)
+            files.put(pathsAndContents[i], pathsAndContents[i + 1]);
+        return files;
+    }
+
+    /**
+     * @return the matched, candidate, deleted and added entities and statements, sorted so that runs can be compared
+     */
+    public static List<String> describe(MatchPair matchPair) {
+        List<String> lines = new ArrayList<>();
+        for (Pair<EntityInfo, EntityInfo> pair : matchPair.getMatchedEntityInfos())
+            lines.add("matched " + pair);
+        for (Pair<EntityInfo, EntityInfo> pair : matchPair.getCandidateEntityInfos())
+            lines.add("candidate " + pair);
+        for (EntityInfo entity : matchPair.getDeletedEntityInfos())
+            lines.add("deleted " + entity);
+        for (EntityInfo entity : matchPair.getAddedEntityInfos())
+            lines.add("added " + entity);
+        for (Pair<StatementInfo, StatementInfo> pair : matchPair.getMatchedStatementInfos())
+            lines.add("matched " + pair);
+        for (Pair<StatementNodeTree, StatementNodeTree> pair : matchPair.getCandidateStatements())
+            lines.add("candidate " + Pair.of(pair.getLeft().getEntity(), pair.getRight().getEntity()));
+        for (StatementInfo statement : matchPair.getDeletedStatementInfos())
+            lines.add("deleted " + statement);
+        for (StatementInfo statement : matchPair.getAddedStatementInfos())
+            lines.add("added " + statement);
+        Collections.sort(lines);
+        return lines;
+    }
+
+    @Override
+    public void close() throws IOException {
+        git.close();
+        FileUtils.deleteDirectory(directory);
+    }
+}
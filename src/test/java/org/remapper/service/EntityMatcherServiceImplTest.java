@@ -0,0 +1,131 @@
+package org.remapper.service;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.remapper.RepositoryFixture;
+import org.remapper.dto.MatchPair;
+import org.remapper.handler.MatchingHandler;
+import org.remapper.util.GitServiceImpl;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.remapper.RepositoryFixture.files;
+
+public class EntityMatcherServiceImplTest {
+
+    private RepositoryFixture fixture;
+    private List<RevCommit> history;
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = new RepositoryFixture();
+        history = new ArrayList<>();
+        history.add(fixture.commit("initial", files(
+                "src/org/example/A.java", "package org.example;\n\npublic class A {\n    int a() {\n        return 1;\n    }\n}\n",
+                "docs/org/example/D.java", "package org.example;\n\npublic class D {\n}\n",
+                "README.md", "readme\n")));
+        history.add(fixture.commit("readme only", files("README.md", "readme, changed\n")));
+        history.add(fixture.commit("modify A", files(
+                "src/org/example/A.java", "package org.example;\n\npublic class A {\n    int a() {\n        return 2;\n    }\n}\n")));
+        history.add(fixture.commit("add B only", files(
+                "src/org/example/B.java", "package org.example;\n\npublic class B {\n}\n")));
+        history.add(fixture.commit("rename B to C", files(
+                "src/org/example/B.java", null,
+                "src/org/example/C.java", "package org.example;\n\npublic class B {\n}\n")));
+        history.add(fixture.commit("modify excluded D", files(
+                "docs/org/example/D.java", "package org.example;\n\npublic class D {\n    int d;\n}\n")));
+        history.add(fixture.commit("replace A by E", files(
+                "src/org/example/A.java", null,
+                "src/org/example/E.java", "package org.example;\n\npublic class E {\n    int e() {\n        return 2;\n    }\n}\n")));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Test
+    public void triageAgreesWithContainJavaChange() throws Exception {
+        GitServiceImpl excluding = new GitServiceImpl();
+        excluding.setExcludePatterns(Collections.singletonList("docs/**"));
+        GitServiceImpl including = new GitServiceImpl();
+        including.setIncludePatterns(Collections.singletonList("docs/**"));
+        Repository repository = fixture.getRepository();
+        try (RevWalk walk = new RevWalk(repository)) {
+            for (GitServiceImpl gitService : Arrays.asList(new GitServiceImpl(), excluding, including)) {
+                for (RevCommit commit : history.subList(1, history.size())) {
+                    RevCommit parsedCommit = walk.parseCommit(commit);
+                    walk.parseHeaders(parsedCommit.getParent(0));
+                    assertEquals(commit.getShortMessage(), gitService.containJavaChange(repository, parsedCommit),
+                            gitService.triageCommit(repository, parsedCommit).containJavaChange());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void schedulesCommitsInHistoryOrder() throws Exception {
+        GitServiceImpl gitService = new GitServiceImpl();
+        gitService.setExcludePatterns(Collections.singletonList("docs/**"));
+        List<String> expected = Arrays.asList(history.get(6).getName(), history.get(4).getName(), history.get(2).getName());
+        for (int run = 0; run < 2; run++) {
+            List<String> matched = new ArrayList<>();
+            int count = new EntityMatcherServiceImpl(gitService).matchAll(fixture.getRepository(), handler(matched), 1);
+            assertEquals(expected, matched);
+            assertEquals(expected.size(), count);
+        }
+        List<String> matched = new ArrayList<>();
+        int count = new EntityMatcherServiceImpl(new GitServiceImpl()).matchAll(fixture.getRepository(), handler(matched), 1);
+        assertEquals(Arrays.asList(history.get(6).getName(), history.get(5).getName(), history.get(4).getName(),
+                history.get(2).getName()), matched);
+        assertEquals(4, count);
+    }
+
+    @Test
+    public void handsResultsOverInHistoryOrder() throws Exception {
+        List<String> expected = new ArrayList<>();
+        new EntityMatcherServiceImpl().matchAll(fixture.getRepository(), handler(expected), 1);
+        for (int run = 0; run < 3; run++) {
+            List<String> matched = Collections.synchronizedList(new ArrayList<>());
+            assertEquals(expected.size(), new EntityMatcherServiceImpl().matchAll(fixture.getRepository(), handler(matched), 4));
+            assertEquals(expected, matched);
+        }
+    }
+
+    @Test
+    public void countsOnlyMatchedCommits() throws Exception {
+        List<String> failed = new ArrayList<>();
+        MatchingHandler handler = new MatchingHandler() {
+            @Override
+            public void handle(String commitId, MatchPair matchPair) {
+                throw new IllegalStateException(commitId);
+            }
+
+            @Override
+            public void handleException(String commitId, Exception e) {
+                synchronized (failed) {
+                    failed.add(commitId);
+                }
+            }
+        };
+        for (int threads : new int[]{1, 2}) {
+            failed.clear();
+            assertEquals(0, new EntityMatcherServiceImpl().matchAll(fixture.getRepository(), handler, threads));
+            assertEquals(4, failed.size());
+        }
+    }
+
+    private static MatchingHandler handler(List<String> matched) {
+        return new MatchingHandler() {
+            @Override
+            public void handle(String commitId, MatchPair matchPair) {
+                matched.add(commitId);
+            }
+        };
+    }
+}
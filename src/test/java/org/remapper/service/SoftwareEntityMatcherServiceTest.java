@@ -0,0 +1,365 @@
+package org.remapper.service;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.remapper.RepositoryFixture;
+import org.remapper.dto.EntityInfo;
+import org.remapper.dto.MatchPair;
+import org.remapper.handler.MatchingHandler;
+import org.remapper.util.DNTCache;
+import org.remapper.util.DiceFunction;
+import org.remapper.util.ParserEnvironment;
+import org.remapper.util.SourceTokens;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.remapper.RepositoryFixture.files;
+
+public class SoftwareEntityMatcherServiceTest {
+
+    private RepositoryFixture fixture;
+    private RevCommit commit;
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = new RepositoryFixture();
+        fixture.commit("initial", files(
+                "src/org/example/Shapes.java", "package org.example;\n\n" +
+                        "import java.util.List;\n\n" +
+                        "public class Shapes {\n" +
+                        "    private double scale = 1.0;\n\n" +
+                        "    public double area(double width, double height) {\n" +
+                        "        double area = width * height;\n" +
+                        "        if (area < 0)\n" +
+                        "            throw new IllegalArgumentException(\"negative\");\n" +
+                        "        return area * scale;\n" +
+                        "    }\n\n" +
+                        "    public double perimeter(double width, double height) {\n" +
+                        "        double sum = width + height;\n" +
+                        "        return 2 * sum * scale;\n" +
+                        "    }\n\n" +
+                        "    public double total(List<Double> areas) {\n" +
+                        "        double total = 0;\n" +
+                        "        for (double area : areas)\n" +
+                        "            total += area;\n" +
+                        "        return total;\n" +
+                        "    }\n\n" +
+                        "    public String describe(double width, double height) {\n" +
+                        "        StringBuilder builder = new StringBuilder();\n" +
+                        "        builder.append(\"width=\").append(width);\n" +
+                        "        builder.append(\", height=\").append(height);\n" +
+                        "        builder.append(\", area=\").append(area(width, height));\n" +
+                        "        builder.append(\", perimeter=\").append(perimeter(width, height));\n" +
+                        "        return builder.toString();\n" +
+                        "    }\n\n" +
+                        "    public void reset() {\n" +
+                        "        scale = 1.0;\n" +
+                        "    }\n" +
+                        "}\n",
+                "src/org/example/Text.java", "package org.example;\n\n" +
+                        "public class Text {\n\n" +
+                        "    public static String join(String[] parts, String separator) {\n" +
+                        "        StringBuilder builder = new StringBuilder();\n" +
+                        "        for (int i = 0; i < parts.length; i++) {\n" +
+                        "            if (i > 0)\n" +
+                        "                builder.append(separator);\n" +
+                        "            builder.append(parts[i]);\n" +
+                        "        }\n" +
+                        "        return builder.toString();\n" +
+                        "    }\n\n" +
+                        "    public static String repeat(String s, int times) {\n" +
+                        "        StringBuilder builder = new StringBuilder();\n" +
+                        "        for (int i = 0; i < times; i++)\n" +
+                        "            builder.append(s);\n" +
+                        "        return builder.toString();\n" +
+                        "    }\n\n" +
+                        "    public static String pad(String s, int width) {\n" +
+                        "        if (s.length() >= width)\n" +
+                        "            return s;\n" +
+                        "        return s + repeat(\" \", width - s.length());\n" +
+                        "    }\n" +
+                        "}\n"));
+        commit = fixture.commit("rename, move and change methods", files(
+                "src/org/example/Shapes.java", "package org.example;\n\n" +
+                        "public class Shapes {\n" +
+                        "    private double scale = 1.0;\n\n" +
+                        "    public double computeArea(double width, double height) {\n" +
+                        "        double area = width * height;\n" +
+                        "        if (area < 0)\n" +
+                        "            throw new IllegalArgumentException(\"negative area\");\n" +
+                        "        return area * scale;\n" +
+                        "    }\n\n" +
+                        "    public double perimeter(double width, double height) {\n" +
+                        "        double sum = width + height;\n" +
+                        "        return 2 * sum * scale;\n" +
+                        "    }\n\n" +
+                        "    public double square(double side) {\n" +
+                        "        return computeArea(side, side);\n" +
+                        "    }\n\n" +
+                        "    public String describe(double width, double height) {\n" +
+                        "        StringBuilder builder = new StringBuilder();\n" +
+                        "        builder.append(\"width=\").append(width);\n" +
+                        "        builder.append(\", height=\").append(height);\n" +
+                        "        builder.append(\", scale=\").append(scale);\n" +
+                        "        builder.append(\", area=\").append(computeArea(width, height));\n" +
+                        "        builder.append(\", perimeter=\").append(perimeter(width, height));\n" +
+                        "        return builder.toString();\n" +
+                        "    }\n" +
+                        "}\n",
+                "src/org/example/Numbers.java", "package org.example;\n\n" +
+                        "import java.util.List;\n\n" +
+                        "public class Numbers {\n\n" +
+                        "    public static double sum(List<Double> values) {\n" +
+                        "        double total = 0;\n" +
+                        "        for (double value : values)\n" +
+                        "            total += value;\n" +
+                        "        return total;\n" +
+                        "    }\n" +
+                        "}\n",
+                "src/org/example/Text.java", null,
+                "src/org/example/Strings.java", "package org.example;\n\n" +
+                        "public class Strings {\n\n" +
+                        "    public static String join(String[] parts, String separator) {\n" +
+                        "        StringBuilder builder = new StringBuilder();\n" +
+                        "        for (int i = 0; i < parts.length; i++) {\n" +
+                        "            if (i > 0)\n" +
+                        "                builder.append(separator);\n" +
+                        "            builder.append(parts[i]);\n" +
+                        "        }\n" +
+                        "        return builder.toString();\n" +
+                        "    }\n\n" +
+                        "    public static String repeat(String s, int times) {\n" +
+                        "        if (times <= 0)\n" +
+                        "            return \"\";\n" +
+                        "        StringBuilder builder = new StringBuilder();\n" +
+                        "        for (int i = 0; i < times; i++)\n" +
+                        "            builder.append(s);\n" +
+                        "        return builder.toString();\n" +
+                        "    }\n\n" +
+                        "    public static String padRight(String s, int width) {\n" +
+                        "        return s.length() >= width ? s : s + repeat(\" \", width - s.length());\n" +
+                        "    }\n\n" +
+                        "    public static String padLeft(String s, int width) {\n" +
+                        "        return s.length() >= width ? s : repeat(\" \", width - s.length()) + s;\n" +
+                        "    }\n" +
+                        "}\n"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DiceFunction.setBoundsEnabled(true);
+        SourceTokens.setEnabled(true);
+        fixture.close();
+    }
+
+    @Test
+    public void boundsKeepTheSameCandidates() {
+        DiceFunction.setBoundsEnabled(false);
+        List<String> unbounded = match(commit);
+        DiceFunction.setBoundsEnabled(true);
+        List<String> bounded = match(commit);
+        assertFalse(unbounded.isEmpty());
+        assertEquals(unbounded, bounded);
+    }
+
+    /**
+     * The methods are copies of each other, renamed from letters to digits, so that many pairs tie on their scores.
+     */
+    @Test
+    public void parallelScoringMatchesSequentialScoring() throws Exception {
+        fixture.commit("add copied methods", files(
+                "src/org/example/Handlers.java", handlers("Handlers", "process", 'A', "count++;"),
+                "src/org/example/Listeners.java", handlers("Listeners", "when", 'A', "count--;")));
+        RevCommit ties = fixture.commit("rename copied methods", files(
+                "src/org/example/Handlers.java", handlers("Handlers", "handle", '1', "count++;"),
+                "src/org/example/Listeners.java", handlers("Listeners", "on", '1', "count--;")));
+        for (RevCommit commit : new RevCommit[]{this.commit, ties}) {
+            List<String> sequential = match(commit, 1);
+            assertFalse(sequential.isEmpty());
+            for (int run = 0; run < 3; run++)
+                assertEquals(sequential, match(commit, 8));
+        }
+    }
+
+    /**
+     * Every file of the second commit changes, so that the trees of many files are built in parallel, and every third
+     * part replaces its helper method with a copy of the one of the previous part, so that the copies tie.
+     */
+    @Test
+    public void parallelTreeBuildingMatchesSequentialTreeBuilding() throws Exception {
+        Map<String, String> before = new LinkedHashMap<>();
+        Map<String, String> after = new LinkedHashMap<>();
+        for (int i = 0; i < 24; i++) {
+            before.put("src/org/example/parts/Part" + i + ".java", part(i, i, "value + " + i));
+            after.put("src/org/example/parts/Part" + i + ".java", part(i, i % 3 == 0 ? (i + 23) % 24 : i, "value * " + i));
+        }
+        fixture.commit("add parts", before);
+        RevCommit parts = fixture.commit("change every part", after);
+        List<String> sequential = match(parts, 1);
+        assertFalse(sequential.isEmpty());
+        for (int run = 0; run < 3; run++)
+            assertEquals(sequential, match(parts, 8));
+    }
+
+    /**
+     * The second commit only reorders the imports, adds Javadoc and changes the whitespace, so that the file is
+     * matched from its tokens alone, and the result must be the one of resolving and pruning it.
+     */
+    @Test
+    public void reformattedFilesRecordTheSameUnchangedPairs() throws Exception {
+        fixture.commit("add format", files("src/org/example/Format.java", format("count + 1")));
+        RevCommit reformatted = fixture.commit("reformat", files("src/org/example/Format.java", reformat("count + 1")));
+        assertTrue(SourceTokens.haveSameDeclarations(ParserEnvironment.getDefault(), format("count + 1"), reformat("count + 1")));
+        SourceTokens.setEnabled(false);
+        MatchPair full = matchPair(reformatted);
+        SourceTokens.setEnabled(true);
+        MatchPair shortcut = matchPair(reformatted);
+        assertFalse(full.getUnchangedEntityInfos().isEmpty());
+        assertEquals(unchanged(full), unchanged(shortcut));
+        assertEquals(RepositoryFixture.describe(full), RepositoryFixture.describe(shortcut));
+    }
+
+    @Test
+    public void changedImportsAndTokensAreNotShortCircuited() throws Exception {
+        ParserEnvironment environment = ParserEnvironment.getDefault();
+        String source = format("count + 1");
+        String[] changes = {
+                source.replace("import java.util.Map;\n", "import java.util.Map;\nimport java.util.Set;\n"),
+                source.replace("import java.util.Map;\n", ""),
+                reformat("count + 2")
+        };
+        fixture.commit("add format", files("src/org/example/Format.java", source));
+        for (String change : changes) {
+            assertFalse(SourceTokens.haveSameDeclarations(environment, source, change));
+            fixture.commit("back to format", files("src/org/example/Format.java", source));
+            RevCommit changed = fixture.commit("change format", files("src/org/example/Format.java", change));
+            SourceTokens.setEnabled(false);
+            MatchPair full = matchPair(changed);
+            SourceTokens.setEnabled(true);
+            MatchPair shortcut = matchPair(changed);
+            assertEquals(unchanged(full), unchanged(shortcut));
+            assertEquals(RepositoryFixture.describe(full), RepositoryFixture.describe(shortcut));
+        }
+    }
+
+    private static String format(String next) {
+        return "package org.example;\n\n" +
+                "import java.util.List;\n" +
+                "import java.util.Map;\n\n" +
+                "public class Format {\n" +
+                "    private int count;\n\n" +
+                "    public int next() {\n" +
+                "        return " + next + ";\n" +
+                "    }\n\n" +
+                "    public int size(List<String> list, Map<String, String> map) {\n" +
+                "        return list.size() + map.size();\n" +
+                "    }\n" +
+                "}\n";
+    }
+
+    private static String reformat(String next) {
+        return "package org.example;\n\n" +
+                "import java.util.Map;\n" +
+                "import java.util.List;\n\n" +
+                "/**\n" +
+                " * Formats counts.\n" +
+                " */\n" +
+                "public class Format\n" +
+                "{\n" +
+                "\tprivate int count;\n\n" +
+                "\t/**\n" +
+                "\t * @return the next count\n" +
+                "\t */\n" +
+                "\tpublic int next()\n" +
+                "\t{\n" +
+                "\t\treturn " + next + "; // not stored\n" +
+                "\t}\n\n" +
+                "\tpublic int size(List<String> list,\n" +
+                "\t                Map<String, String> map) {\n" +
+                "\t\treturn list.size()\n" +
+                "\t\t\t\t+ map.size();\n" +
+                "\t}\n" +
+                "}\n";
+    }
+
+    private static List<String> unchanged(MatchPair matchPair) {
+        List<String> lines = new ArrayList<>();
+        for (Pair<EntityInfo, EntityInfo> pair : matchPair.getUnchangedEntityInfos())
+            lines.add(pair.toString());
+        Collections.sort(lines);
+        return lines;
+    }
+
+    /**
+     * @param helper the part whose helper method the class declares
+     */
+    private static String part(int index, int helper, String expression) {
+        return "package org.example.parts;\n\n" +
+                "public class Part" + index + " {\n\n" +
+                "    public int compute(int value) {\n" +
+                "        int result = " + expression + ";\n" +
+                "        return result;\n" +
+                "    }\n\n" +
+                "    public static int helper" + helper + "(int value) {\n" +
+                "        int doubled = value * 2;\n" +
+                "        return doubled + " + helper + ";\n" +
+                "    }\n" +
+                "}\n";
+    }
+
+    private static String handlers(String className, String prefix, char first, String update) {
+        StringBuilder source = new StringBuilder("package org.example;\n\npublic class " + className +
+                " {\n    private int count;\n");
+        for (char event = first; event < first + 8; event++) {
+            source.append("\n    public int ").append(prefix).append(event).append("(String message) {\n")
+                    .append("        System.out.println(message);\n")
+                    .append("        ").append(update).append("\n")
+                    .append("        return count;\n")
+                    .append("    }\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    /**
+     * Parallel streams started from a task of the pool run in that pool, so its parallelism is the one of matching.
+     */
+    private List<String> match(RevCommit commit, int parallelism) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> match(commit)).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private List<String> match(RevCommit commit) {
+        return RepositoryFixture.describe(matchPair(commit));
+    }
+
+    /**
+     * The shared tree cache is cleared first, so that each run builds its trees.
+     */
+    private MatchPair matchPair(RevCommit commit) {
+        DNTCache.getSharedCache().clear();
+        List<MatchPair> results = new ArrayList<>();
+        new EntityMatcherServiceImpl().matchAtCommit(fixture.getRepository(), commit.getName(), new MatchingHandler() {
+            @Override
+            public void handle(String commitId, MatchPair matchPair) {
+                results.add(matchPair);
+            }
+        });
+        assertEquals(1, results.size());
+        return results.get(0);
+    }
+}
@@ -0,0 +1,42 @@
+package org.remapper.util;
+
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParserEnvironmentTest {
+
+    private static final String SOURCE = "class A {\n    int a() {\n        int b = 1;\n        return b;\n    }\n}\n";
+
+    /**
+     * An outline parser which is taken but never used must not leave the next parser of the thread without bodies.
+     */
+    @Test
+    public void unusedOutlineParserDoesNotLeak() {
+        ParserEnvironment environment = ParserEnvironment.getDefault();
+        List<Supplier<ASTParser>> factories = Arrays.asList(environment::getSourceParser, environment::getFastParser,
+                environment::getASTParser);
+        for (Supplier<ASTParser> factory : factories) {
+            environment.getOutlineParser();
+            ASTParser parser = factory.get();
+            parser.setSource(SOURCE.toCharArray());
+            CompilationUnit cu = (CompilationUnit) parser.createAST(null);
+            MethodDeclaration method = ((TypeDeclaration) cu.types().get(0)).getMethods()[0];
+            assertEquals(2, method.getBody().statements().size());
+        }
+        ASTParser outline = environment.getOutlineParser();
+        outline.setSource(SOURCE.toCharArray());
+        CompilationUnit cu = (CompilationUnit) outline.createAST(null);
+        MethodDeclaration method = ((TypeDeclaration) cu.types().get(0)).getMethods()[0];
+        assertTrue(method.getBody().statements().isEmpty());
+    }
+}
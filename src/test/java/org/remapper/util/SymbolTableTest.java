@@ -0,0 +1,172 @@
+package org.remapper.util;
+
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.remapper.RepositoryFixture;
+import org.remapper.dto.DeclarationNodeTree;
+import org.remapper.dto.EntityInfo;
+import org.remapper.dto.MatchPair;
+import org.remapper.handler.MatchingHandler;
+import org.remapper.service.EntityMatcherServiceImpl;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.remapper.RepositoryFixture.files;
+
+/**
+ * Each commit adds its files, so that all their entities are added and carry the entities depending on them, as
+ * resolved by the name-based mode.
+ */
+public class SymbolTableTest {
+
+    private RepositoryFixture fixture;
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = new RepositoryFixture();
+        fixture.commit("initial", files("README.md", "readme\n"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        SymbolTable.setEnabled(false);
+        fixture.close();
+    }
+
+    @Test
+    public void sameArityOverloadsResolveNothing() throws Exception {
+        RevCommit commit = fixture.commit("add logger", files(
+                "src/org/example/Logger.java", "package org.example;\n\n" +
+                        "public class Logger {\n\n" +
+                        "    void log(String message) {\n" +
+                        "    }\n\n" +
+                        "    void log(int code) {\n" +
+                        "    }\n\n" +
+                        "    void log() {\n" +
+                        "    }\n\n" +
+                        "    void run() {\n" +
+                        "        log(\"started\");\n" +
+                        "        log();\n" +
+                        "    }\n" +
+                        "}\n"));
+        Map<String, Set<String>> dependencies = dependencies(commit, true);
+        assertEquals(Collections.emptySet(), dependencies.get("org.example.Logger#log:5"));
+        assertEquals(Collections.emptySet(), dependencies.get("org.example.Logger#log:8"));
+        assertEquals(Collections.singleton("org.example.Logger#run:14"), dependencies.get("org.example.Logger#log:11"));
+    }
+
+    @Test
+    public void singleTypeImportOfUnknownTypeHidesOtherRules() throws Exception {
+        RevCommit commit = fixture.commit("add nodes", files(
+                "src/org/example/Node.java", "package org.example;\n\n" +
+                        "public class Node {\n" +
+                        "}\n",
+                "src/org/example/Local.java", "package org.example;\n\n" +
+                        "public class Local {\n\n" +
+                        "    Object create() {\n" +
+                        "        return new Node();\n" +
+                        "    }\n" +
+                        "}\n",
+                "src/org/example/Imported.java", "package org.example;\n\n" +
+                        "import org.other.Node;\n\n" +
+                        "public class Imported {\n\n" +
+                        "    Object create() {\n" +
+                        "        return new Node();\n" +
+                        "    }\n" +
+                        "}\n"));
+        Map<String, Set<String>> dependencies = dependencies(commit, true);
+        assertEquals(Collections.singleton("org.example.Local#create:5"), dependencies.get("org.example.Node#Node:3"));
+    }
+
+    @Test
+    public void localNamesShadowFields() throws Exception {
+        RevCommit commit = fixture.commit("add counter", files(
+                "src/org/example/Counter.java", "package org.example;\n\n" +
+                        "public class Counter {\n" +
+                        "    private int count;\n\n" +
+                        "    int local() {\n" +
+                        "        int count = 1;\n" +
+                        "        return count;\n" +
+                        "    }\n\n" +
+                        "    int parameter(int count) {\n" +
+                        "        return count + 1;\n" +
+                        "    }\n\n" +
+                        "    int field() {\n" +
+                        "        return count;\n" +
+                        "    }\n" +
+                        "}\n"));
+        Map<String, Set<String>> dependencies = dependencies(commit, true);
+        assertEquals(Collections.singleton("org.example.Counter#field:15"), dependencies.get("org.example.Counter#count:4"));
+    }
+
+    /**
+     * Every usage has a single candidate in the changed files, so that both modes find the same dependencies.
+     */
+    @Test
+    public void namesAgreeWithBindings() throws Exception {
+        RevCommit commit = fixture.commit("add shapes", files(
+                "src/org/example/Shape.java", "package org.example;\n\n" +
+                        "public abstract class Shape {\n" +
+                        "    protected double scale = 1.0;\n\n" +
+                        "    public abstract double area();\n\n" +
+                        "    public double scaledArea() {\n" +
+                        "        return area() * scale;\n" +
+                        "    }\n" +
+                        "}\n",
+                "src/org/example/Square.java", "package org.example;\n\n" +
+                        "public class Square extends Shape {\n" +
+                        "    private final double side;\n\n" +
+                        "    public Square(double side) {\n" +
+                        "        this.side = side;\n" +
+                        "    }\n\n" +
+                        "    @Override\n" +
+                        "    public double area() {\n" +
+                        "        return side * side;\n" +
+                        "    }\n" +
+                        "}\n",
+                "src/org/example/Report.java", "package org.example;\n\n" +
+                        "public class Report {\n\n" +
+                        "    public static String describe(Square square) {\n" +
+                        "        return \"area=\" + square.scaledArea();\n" +
+                        "    }\n\n" +
+                        "    public static Square unit() {\n" +
+                        "        return new Square(1.0);\n" +
+                        "    }\n" +
+                        "}\n"));
+        Map<String, Set<String>> bindings = dependencies(commit, false);
+        Map<String, Set<String>> names = dependencies(commit, true);
+        assertEquals(new TreeSet<>(Arrays.asList("org.example.Report#describe:5", "org.example.Report#unit:9")),
+                bindings.get("org.example.Square#Square:3"));
+        assertEquals(bindings, names);
+    }
+
+    /**
+     * @return the entities depending on each added entity, as container#name:line
+     */
+    private Map<String, Set<String>> dependencies(RevCommit commit, boolean nameBased) {
+        SymbolTable.setEnabled(nameBased);
+        DNTCache.getSharedCache().clear();
+        Map<String, Set<String>> dependencies = new TreeMap<>();
+        new EntityMatcherServiceImpl().matchAtCommit(fixture.getRepository(), commit.getName(), new MatchingHandler() {
+            @Override
+            public void handle(String commitId, MatchPair matchPair) {
+                for (DeclarationNodeTree entity : matchPair.getAddedEntities()) {
+                    Set<String> dependents = new TreeSet<>();
+                    for (EntityInfo dependency : entity.getDependencies())
+                        dependents.add(describe(dependency));
+                    dependencies.put(describe(entity.getEntity()), dependents);
+                }
+            }
+        });
+        assertFalse(dependencies.isEmpty());
+        return dependencies;
+    }
+
+    private static String describe(EntityInfo entity) {
+        return entity.getContainer() + "#" + entity.getName() + ":" + entity.getLocation().getStartLine();
+    }
+}